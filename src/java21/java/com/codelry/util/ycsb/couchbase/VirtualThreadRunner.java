@@ -0,0 +1,118 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.Benchmark;
+import com.codelry.util.ycsb.DB;
+import com.codelry.util.ycsb.Workload;
+import jdk.jfr.consumer.RecordingStream;
+import org.apache.commons.cli.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a YCSB workload with one virtual thread per logical client, so tens of thousands of clients can call the
+ * blocking binding without a platform thread each. Requires Java 21.
+ * The number of carrier threads is reported with the results, and JFR {@code jdk.VirtualThreadPinned} events are
+ * recorded while the workload runs: their count is reported, and their durations in the {@code VT-PINNED}
+ * measurement.
+ */
+public class VirtualThreadRunner {
+  private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadRunner.class);
+  public static final String PINNED_MEASUREMENT = "VT-PINNED";
+  public static final String PINNED_THRESHOLD = "virtualthreads.pinnedThresholdMs";
+
+  public static void main(String[] args) {
+    Options options = WorkloadDriver.options();
+    options.addOption(new Option("t", "threads", true, "number of virtual thread clients (default threadcount)"));
+    CommandLine cmd = WorkloadDriver.parse("VirtualThreadRunner", options, args);
+
+    try {
+      Properties properties = WorkloadDriver.properties(cmd);
+      boolean load = cmd.hasOption("load");
+      properties.setProperty(Benchmark.DO_TRANSACTIONS_PROPERTY, String.valueOf(!load));
+      int clients = Integer.parseInt(cmd.getOptionValue("threads", properties.getProperty("threadcount", "1")));
+      long operations = WorkloadDriver.operationCount(properties, load);
+      long maxExecutionMs = TimeUnit.SECONDS.toMillis(Long.parseLong(properties.getProperty("maxexecutiontime", "0")));
+      long pinnedThresholdMs = Long.parseLong(properties.getProperty(PINNED_THRESHOLD, "20"));
+      int carriers = Integer.parseInt(System.getProperty("jdk.virtualThreadScheduler.parallelism",
+          String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+      Workload workload = WorkloadDriver.workload(properties);
+      AtomicLong pinned = new AtomicLong();
+      LongAdder done = new LongAdder();
+      long deadline = maxExecutionMs > 0 ? System.currentTimeMillis() + maxExecutionMs : Long.MAX_VALUE;
+
+      try (RecordingStream recording = new RecordingStream()) {
+        recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(pinnedThresholdMs));
+        recording.onEvent("jdk.VirtualThreadPinned", event -> {
+          pinned.incrementAndGet();
+          OperationMetrics.measureMicros(PINNED_MEASUREMENT, event.getDuration().toNanos() / 1000);
+        });
+        recording.startAsync();
+
+        LOGGER.info("Starting {} virtual thread clients on {} carrier threads", clients, carriers);
+        long start = System.currentTimeMillis();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+          List<Future<?>> futures = new ArrayList<>(clients);
+          for (int id = 0; id < clients; id++) {
+            long share = operations / clients + (id < operations % clients ? 1 : 0);
+            int clientId = id;
+            futures.add(executor.submit(() -> {
+              runClient(properties, workload, clientId, clients, share, load, deadline, done);
+              return null;
+            }));
+          }
+          for (Future<?> future : futures) {
+            future.get();
+          }
+        }
+        long runtime = System.currentTimeMillis() - start;
+        workload.cleanup();
+        recording.close();
+
+        System.out.println("[VIRTUAL-THREADS], Clients, " + clients);
+        System.out.println("[VIRTUAL-THREADS], Carriers, " + carriers);
+        System.out.println("[VIRTUAL-THREADS], PinnedEvents, " + pinned.get());
+        WorkloadDriver.report(runtime, done.sum());
+      }
+      System.exit(0);
+    } catch (Exception e) {
+      System.err.println("Error: " + e);
+      e.printStackTrace(System.err);
+      System.exit(1);
+    }
+  }
+
+  private static void runClient(Properties properties, Workload workload, int id, int clients, long operations,
+                                boolean load, long deadline, LongAdder done) throws Exception {
+    DB db = WorkloadDriver.database(properties);
+    db.init();
+    try {
+      Object state = workload.initThread(properties, id, clients);
+      for (long i = 0; i < operations; i++) {
+        if (workload.isStopRequested() || System.currentTimeMillis() >= deadline) {
+          break;
+        }
+        if (load) {
+          workload.doInsert(db, state);
+        } else {
+          workload.doTransaction(db, state);
+        }
+        done.increment();
+      }
+    } finally {
+      db.cleanup();
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.StringByteIterator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds YCSB shaped documents for the benchmarks.
+ */
+final class BenchmarkDocuments {
+
+  static String[] fieldNames(int fieldCount) {
+    String[] names = new String[fieldCount];
+    for (int i = 0; i < fieldCount; i++) {
+      names[i] = "field" + i;
+    }
+    return names;
+  }
+
+  static String[] fieldValues(int fieldCount, int fieldLength) {
+    Random random = new Random(fieldCount * 31L + fieldLength);
+    String[] values = new String[fieldCount];
+    for (int i = 0; i < fieldCount; i++) {
+      StringBuilder value = new StringBuilder(fieldLength);
+      for (int j = 0; j < fieldLength; j++) {
+        value.append((char) (' ' + 1 + random.nextInt(94)));
+      }
+      values[i] = value.toString().replace('"', '\'').replace('\\', '/');
+    }
+    return values;
+  }
+
+  static Map<String, ByteIterator> document(String[] names, String[] values) {
+    Map<String, ByteIterator> document = new HashMap<>(names.length * 2);
+    for (int i = 0; i < names.length; i++) {
+      document.put(names[i], new StringByteIterator(values[i]));
+    }
+    return document;
+  }
+
+  private BenchmarkDocuments() {
+    super();
+  }
+}
@@ -0,0 +1,47 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.couchbase.client.java.kv.MutateInSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the sub-document mutation specs used by update(), with the same helper and reused spec list as
+ * the binding. The update is built before each invocation, so only the spec construction is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class MutationBenchmark {
+
+  @Param({"1", "10"})
+  public int fieldCount;
+
+  @Param({"100", "1000"})
+  public int fieldLength;
+
+  private String[] names;
+  private String[] values;
+  private Map<String, ByteIterator> update;
+  private final List<MutateInSpec> specs = new ArrayList<>();
+
+  @Setup
+  public void setup() {
+    names = BenchmarkDocuments.fieldNames(fieldCount);
+    values = BenchmarkDocuments.fieldValues(fieldCount, fieldLength);
+  }
+
+  @Setup(Level.Invocation)
+  public void buildUpdate() {
+    update = BenchmarkDocuments.document(names, values);
+  }
+
+  @Benchmark
+  public List<MutateInSpec> buildSpecs() {
+    return CouchbaseClientBinding.upsertSpecs(update, specs);
+  }
+}
@@ -0,0 +1,55 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.couchbase.client.java.codec.Transcoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures assembling a scan result from fetched documents, as done by scan() for each returned record.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ScanAssemblyBenchmark {
+
+  @Param({"databind", "streaming"})
+  public String codec;
+
+  @Param({"10", "100"})
+  public int recordCount;
+
+  @Param({"false", "true"})
+  public boolean projected;
+
+  private Transcoder transcoder;
+  private byte[][] documents;
+  private Set<String> fields;
+
+  @Setup
+  public void setup() {
+    transcoder = codec.equals("streaming") ? StreamingMapTranscoder.INSTANCE : MapTranscoder.INSTANCE;
+    String[] names = BenchmarkDocuments.fieldNames(10);
+    documents = new byte[recordCount][];
+    for (int i = 0; i < recordCount; i++) {
+      documents[i] = transcoder.encode(BenchmarkDocuments.document(names, BenchmarkDocuments.fieldValues(10, 100)))
+          .encoded();
+    }
+    fields = projected ? Set.of("field0") : null;
+  }
+
+  @Benchmark
+  public Vector<HashMap<String, ByteIterator>> assemble() {
+    Vector<HashMap<String, ByteIterator>> result = new Vector<>(recordCount);
+    for (byte[] document : documents) {
+      @SuppressWarnings("unchecked")
+      HashMap<String, ByteIterator> record = transcoder.decode(HashMap.class, document, 0);
+      result.add(CouchbaseClientBinding.selectFields(record, fields));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,76 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.couchbase.client.java.codec.Transcoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of encoding and decoding YCSB documents with each document codec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class TranscoderBenchmark {
+
+  @Param({"databind", "streaming", "binary"})
+  public String codec;
+
+  @Param({"1", "10", "50"})
+  public int fieldCount;
+
+  @Param({"10", "100", "1000"})
+  public int fieldLength;
+
+  private Transcoder transcoder;
+  private String[] names;
+  private String[] values;
+  private byte[] encoded;
+  private int flags;
+  private Map<String, ByteIterator> document;
+
+  @Setup
+  public void setup() {
+    transcoder = switch (codec) {
+      case "streaming" -> StreamingMapTranscoder.INSTANCE;
+      case "binary" -> BinaryMapTranscoder.INSTANCE;
+      default -> MapTranscoder.INSTANCE;
+    };
+    names = BenchmarkDocuments.fieldNames(fieldCount);
+    values = BenchmarkDocuments.fieldValues(fieldCount, fieldLength);
+    Transcoder.EncodedValue value = transcoder.encode(BenchmarkDocuments.document(names, values));
+    encoded = value.encoded();
+    flags = value.flags();
+  }
+
+  /**
+   * Build the document to encode before each invocation, since encoding consumes its values.
+   */
+  @Setup(Level.Invocation)
+  public void buildDocument() {
+    document = BenchmarkDocuments.document(names, values);
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return transcoder.encode(document).encoded();
+  }
+
+  @Benchmark
+  public Map<?, ?> decode() {
+    return transcoder.decode(Map.class, encoded, flags);
+  }
+
+  @Benchmark
+  public int decodeAndRead() {
+    @SuppressWarnings("unchecked")
+    Map<String, ByteIterator> document = transcoder.decode(Map.class, encoded, flags);
+    int length = 0;
+    for (ByteIterator value : document.values()) {
+      length += value.toString().length();
+    }
+    return length;
+  }
+}
@@ -0,0 +1,112 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.Status;
+import com.couchbase.client.java.ReactiveCollection;
+import com.couchbase.client.java.kv.UpsertOptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-thread insert buffer that writes documents as reactive batch upserts.
+ * A batch is flushed when it reaches the configured size, or when an insert finds the oldest buffered document has
+ * reached the configured age; there is no timer, so a thread that stops inserting keeps its buffer until the next
+ * insert or {@link #drain()}. Only one batch per thread is in flight at a time.
+ * Buffered inserts always return {@link Status#BATCHED_OK}. A failed document is counted with an {@code ERROR} return
+ * code in the {@code INSERT-BATCH} measurement and in {@code ERRORS-INSERT-BATCH}, rather than being reported on an
+ * unrelated insert, and the total for the thread is returned by {@link #drain()}.
+ */
+public class BatchLoader {
+  public static final String BATCH_OPERATION = "INSERT-BATCH";
+  private final UpsertOptions options;
+  private final int batchSize;
+  private final long maxAgeNanos;
+  private final int concurrency;
+  private List<Document> buffer;
+  private long firstAdded;
+  private long failures;
+  private CompletableFuture<Long> pending = CompletableFuture.completedFuture(0L);
+
+  private record Document(ReactiveCollection collection, String key, Map<String, ByteIterator> values) {}
+
+  public BatchLoader(UpsertOptions options, int batchSize, long maxAgeMs, int concurrency) {
+    this.options = options;
+    this.batchSize = batchSize;
+    this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+    this.concurrency = concurrency;
+    this.buffer = new ArrayList<>(batchSize);
+  }
+
+  /**
+   * Add a document to the buffer, flushing the buffer if it is full or too old.
+   * @param collection The collection the record belongs to.
+   * @param key The record key.
+   * @param values The document fields.
+   * @return {@link Status#BATCHED_OK}.
+   */
+  public Status add(ReactiveCollection collection, String key, Map<String, ByteIterator> values) {
+    if (buffer.isEmpty()) {
+      firstAdded = System.nanoTime();
+    }
+    buffer.add(new Document(collection, key, values));
+    if (buffer.size() >= batchSize || System.nanoTime() - firstAdded >= maxAgeNanos) {
+      flush();
+    }
+    return Status.BATCHED_OK;
+  }
+
+  /**
+   * Wait for the previous batch and dispatch the buffered documents as a new batch.
+   */
+  public void flush() {
+    failures += awaitPending();
+    if (!buffer.isEmpty()) {
+      List<Document> batch = buffer;
+      buffer = new ArrayList<>(batchSize);
+      pending = send(batch);
+    }
+  }
+
+  /**
+   * Flush the buffer and wait for all outstanding documents to be written.
+   * @return The number of documents of this loader that failed.
+   */
+  public long drain() {
+    flush();
+    failures += awaitPending();
+    return failures;
+  }
+
+  private long awaitPending() {
+    CompletableFuture<Long> batch = pending;
+    pending = CompletableFuture.completedFuture(0L);
+    try {
+      return batch.join();
+    } catch (Throwable t) {
+      ErrorCounters.record(BATCH_OPERATION, t);
+      return 1;
+    }
+  }
+
+  private CompletableFuture<Long> send(List<Document> batch) {
+    long start = System.nanoTime();
+    return Flux.fromIterable(batch)
+        .flatMap(doc -> doc.collection().upsert(doc.key(), doc.values(), options)
+            .map(r -> Status.OK)
+            .onErrorResume(t -> {
+              ErrorCounters.record(BATCH_OPERATION, t);
+              return Mono.just(Status.ERROR);
+            }), concurrency)
+        .doOnNext(status -> OperationMetrics.status(BATCH_OPERATION, status))
+        .filter(status -> !status.isOk())
+        .count()
+        .doOnTerminate(() -> OperationMetrics.measure(BATCH_OPERATION, start))
+        .toFuture();
+  }
+}
@@ -0,0 +1,165 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.couchbase.client.core.error.InvalidArgumentException;
+import com.couchbase.client.core.msg.kv.CodecFlags;
+import com.couchbase.client.java.CommonOptions;
+import com.couchbase.client.java.codec.Transcoder;
+import com.couchbase.client.java.codec.TypeRef;
+import com.couchbase.client.core.error.EncodingFailureException;
+import com.couchbase.client.core.error.DecodingFailureException;
+import static com.couchbase.client.core.logging.RedactableArgument.redactUser;
+
+import com.codelry.util.ycsb.ByteIterator;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A Map transcoder that stores documents in a compact binary format.
+ * Each field is written as a 2-byte name length, the UTF-8 name, a 4-byte value length, and the raw value bytes.
+ * Documents are flagged as binary so the server does not treat them as JSON.
+ */
+public class BinaryMapTranscoder implements Transcoder {
+
+  public static final BinaryMapTranscoder INSTANCE = new BinaryMapTranscoder();
+
+  private BinaryMapTranscoder() {
+    super();
+  }
+
+  @Override
+  public EncodedValue encode(final Object input) {
+    if (input instanceof CommonOptions.BuiltCommonOptions || input instanceof CommonOptions) {
+      throw InvalidArgumentException.fromMessage("No content provided, cannot " +
+          "encode " + input.getClass().getSimpleName() + " as content!");
+    }
+
+    if (input instanceof byte[]) {
+      return new EncodedValue((byte[]) input, CodecFlags.BINARY_COMPAT_FLAGS);
+    } else if (input instanceof Map) {
+      try {
+        return new EncodedValue(encodeMap((Map<?, ?>) input), CodecFlags.BINARY_COMPAT_FLAGS);
+      } catch (Throwable t) {
+        throw new EncodingFailureException("Serializing of content + " + redactUser(input) + " to binary failed.", t);
+      }
+    } else {
+      throw InvalidArgumentException.fromMessage("Only byte[] and Map types are supported for the BinaryMapTranscoder!");
+    }
+  }
+
+  @Override
+  public <T> T decode(final Class<T> target, final byte[] input, int flags) {
+    return decodeTarget(target, input);
+  }
+
+  @Override
+  public <T> T decode(final TypeRef<T> target, final byte[] input, final int flags) {
+    return decodeTarget(target.type(), input);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T decodeTarget(final Type target, final byte[] input) {
+    if (target.equals(byte[].class)) {
+      return (T) input;
+    }
+    Type raw = target;
+    if (target instanceof ParameterizedType) {
+      raw = ((ParameterizedType) target).getRawType();
+    }
+    if (raw.equals(Map.class) || raw.equals(HashMap.class)) {
+      try {
+        return (T) decodeMap(input);
+      } catch (Throwable e) {
+        throw new DecodingFailureException(e);
+      }
+    }
+    throw new DecodingFailureException("BinaryMapTranscoder can only decode into either byte[] or Map!");
+  }
+
+  /**
+   * Encode a map of field values in the binary document format.
+   * @param input The map to encode.
+   */
+  public static byte[] encodeMap(Map<?, ?> input) {
+    int count = input.size();
+    byte[][] names = new byte[count][];
+    byte[][] values = new byte[count][];
+    int size = 0;
+    int index = 0;
+    for (Map.Entry<?, ?> entry : input.entrySet()) {
+      names[index] = entry.getKey().toString().getBytes(StandardCharsets.UTF_8);
+      values[index] = valueBytes(entry.getValue());
+      if (names[index].length > 0xFFFF) {
+        throw new IllegalArgumentException("Field name is too long: " + entry.getKey());
+      }
+      size += 6 + names[index].length + values[index].length;
+      index++;
+    }
+    byte[] output = new byte[size];
+    int position = 0;
+    for (int i = 0; i < count; i++) {
+      position = writeShort(output, position, names[i].length);
+      System.arraycopy(names[i], 0, output, position, names[i].length);
+      position += names[i].length;
+      position = writeInt(output, position, values[i].length);
+      System.arraycopy(values[i], 0, output, position, values[i].length);
+      position += values[i].length;
+    }
+    return output;
+  }
+
+  /**
+   * Decode a binary document into a map of field values that point into the input array.
+   * @param input The binary document.
+   */
+  public static HashMap<String, ByteIterator> decodeMap(byte[] input) {
+    HashMap<String, ByteIterator> result = new HashMap<>();
+    int position = 0;
+    while (position < input.length) {
+      int nameLength = ((input[position] & 0xFF) << 8) | (input[position + 1] & 0xFF);
+      position += 2;
+      String name = new String(input, position, nameLength, StandardCharsets.UTF_8);
+      position += nameLength;
+      int valueLength = ((input[position] & 0xFF) << 24) | ((input[position + 1] & 0xFF) << 16)
+          | ((input[position + 2] & 0xFF) << 8) | (input[position + 3] & 0xFF);
+      position += 4;
+      if (valueLength < 0 || position + valueLength > input.length) {
+        throw new DecodingFailureException("Binary document is truncated");
+      }
+      result.put(name, new ByteSliceIterator(input, position, valueLength));
+      position += valueLength;
+    }
+    return result;
+  }
+
+  private static byte[] valueBytes(Object value) {
+    if (value instanceof ByteSliceIterator) {
+      ByteSliceIterator slice = (ByteSliceIterator) value;
+      byte[] bytes = new byte[slice.length()];
+      System.arraycopy(slice.buffer(), slice.offset(), bytes, 0, slice.length());
+      return bytes;
+    } else if (value instanceof ByteIterator) {
+      return ((ByteIterator) value).toArray();
+    } else if (value == null) {
+      return new byte[0];
+    }
+    return value.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int writeShort(byte[] output, int position, int value) {
+    output[position] = (byte) (value >>> 8);
+    output[position + 1] = (byte) value;
+    return position + 2;
+  }
+
+  private static int writeInt(byte[] output, int position, int value) {
+    output[position] = (byte) (value >>> 24);
+    output[position + 1] = (byte) (value >>> 16);
+    output[position + 2] = (byte) (value >>> 8);
+    output[position + 3] = (byte) value;
+    return position + 4;
+  }
+}
@@ -0,0 +1,74 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A ByteIterator over a slice of a shared byte array.
+ * The slice is only turned into a String when one is requested.
+ */
+public class ByteSliceIterator extends ByteIterator {
+  private final byte[] buffer;
+  private final int offset;
+  private final int length;
+  private int position;
+
+  public ByteSliceIterator(byte[] buffer, int offset, int length) {
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+    this.position = offset;
+  }
+
+  /**
+   * Create an independent iterator over the same bytes.
+   */
+  public ByteSliceIterator duplicate() {
+    return new ByteSliceIterator(buffer, offset, length);
+  }
+
+  public byte[] buffer() {
+    return buffer;
+  }
+
+  public int offset() {
+    return offset;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return position < offset + length;
+  }
+
+  @Override
+  public byte nextByte() {
+    return buffer[position++];
+  }
+
+  @Override
+  public int nextBuf(byte[] buf, int bufOff) {
+    int count = Math.min(buf.length - bufOff, offset + length - position);
+    System.arraycopy(buffer, position, buf, bufOff, count);
+    position += count;
+    return bufOff + count;
+  }
+
+  @Override
+  public long bytesLeft() {
+    return offset + length - position;
+  }
+
+  public void reset() {
+    position = offset;
+  }
+
+  @Override
+  public String toString() {
+    return new String(buffer, offset, length, StandardCharsets.UTF_8);
+  }
+}
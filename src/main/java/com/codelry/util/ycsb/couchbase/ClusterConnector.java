@@ -0,0 +1,78 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.couchbase.client.core.deps.io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import com.couchbase.client.core.env.Authenticator;
+import com.couchbase.client.core.env.CertificateAuthenticator;
+import com.couchbase.client.core.env.PasswordAuthenticator;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.ClusterOptions;
+import com.couchbase.client.java.env.ClusterEnvironment;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Connects to a cluster with an SDK environment owned by this client.
+ * This is used instead of the shared CouchbaseConnect instance when the binding needs to customize the environment,
+ * such as installing a request tracer or meter, or creating more than one environment.
+ * The connection string is built from {@code couchbase.hostname}, so Capella databases must be addressed by hostname;
+ * the binding refuses to connect this way when Capella properties are set.
+ */
+public final class ClusterConnector {
+
+  public static Cluster connect(Properties properties, Consumer<ClusterEnvironment.Builder> customizer) {
+    String hostname = properties.getProperty("couchbase.hostname", "127.0.0.1");
+    String username = properties.getProperty("couchbase.username", "Administrator");
+    String password = properties.getProperty("couchbase.password", "password");
+    String caCert = properties.getProperty("couchbase.ca.cert");
+    String clientCert = properties.getProperty("couchbase.client.cert");
+    String keyStoreType = properties.getProperty("couchbase.keystore.type", KeyStoreType.PKCS12.name());
+    boolean sslMode = Boolean.parseBoolean(properties.getProperty("couchbase.sslMode", "true"));
+    int kvEndpoints = Integer.parseInt(properties.getProperty("couchbase.kvEndpoints", "8"));
+    long kvTimeout = Long.parseLong(properties.getProperty("couchbase.kvTimeout", "10"));
+    long connectTimeout = Long.parseLong(properties.getProperty("couchbase.connectTimeout", "20"));
+    long queryTimeout = Long.parseLong(properties.getProperty("couchbase.queryTimeout", "90"));
+
+    String connectString;
+    if (hostname.contains("://")) {
+      connectString = hostname;
+    } else {
+      connectString = (sslMode ? "couchbases://" : "couchbase://") + hostname;
+    }
+
+    Authenticator authenticator;
+    if (clientCert != null) {
+      authenticator = CertificateAuthenticator.fromKeyStore(Paths.get(clientCert), password, Optional.of(keyStoreType));
+    } else {
+      authenticator = PasswordAuthenticator.create(username, password);
+    }
+
+    ClusterOptions options = ClusterOptions.clusterOptions(authenticator).environment(env -> {
+      env.ioConfig(io -> io.numKvConnections(kvEndpoints))
+          .timeoutConfig(timeout -> timeout
+              .kvTimeout(Duration.ofSeconds(kvTimeout))
+              .connectTimeout(Duration.ofSeconds(connectTimeout))
+              .queryTimeout(Duration.ofSeconds(queryTimeout)));
+      if (sslMode) {
+        env.securityConfig(security -> {
+          security.enableTls(true);
+          if (caCert != null) {
+            security.trustCertificate(Paths.get(caCert));
+          } else {
+            security.trustManagerFactory(InsecureTrustManagerFactory.INSTANCE);
+          }
+        });
+      }
+      customizer.accept(env);
+    });
+
+    return Cluster.connect(connectString, options);
+  }
+
+  private ClusterConnector() {
+    super();
+  }
+}
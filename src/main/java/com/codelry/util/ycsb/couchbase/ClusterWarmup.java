@@ -0,0 +1,95 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.couchbase.client.core.config.BucketConfig;
+import com.couchbase.client.core.config.CouchbaseBucketConfig;
+import com.couchbase.client.core.diagnostics.PingResult;
+import com.couchbase.client.core.service.ServiceType;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Collection;
+import com.couchbase.client.java.diagnostics.PingOptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up a new connection before the timed phase of a run.
+ * The KV endpoints of every node are pinged, and then one request is sent to every vBucket so each KV socket has
+ * carried traffic and the partition map is resolved before the first measured operation. When the table spans
+ * several collections, one request is also sent to each of the others so their collection IDs are resolved.
+ */
+public final class ClusterWarmup {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClusterWarmup.class);
+  private static final int DEFAULT_PARTITIONS = 1024;
+  private static final String KEY_PREFIX = "ycsb-warmup-";
+
+  /**
+   * Run the warm-up.
+   * @param bucket The connected bucket.
+   * @param collections The test collections.
+   * @param concurrency The number of priming requests kept in flight.
+   */
+  public static void run(Bucket bucket, Collection[] collections, int concurrency) {
+    Collection collection = collections[0];
+    PingResult ping = bucket.ping(PingOptions.pingOptions().serviceTypes(EnumSet.of(ServiceType.KV)));
+    int endpoints = ping.endpoints().getOrDefault(ServiceType.KV, List.of()).size();
+    List<String> keys = partitionKeys(partitions(bucket));
+    Long primed = Flux.fromIterable(keys)
+        .flatMap(key -> collection.reactive().exists(key)
+            .map(result -> 1L)
+            .onErrorResume(e -> Mono.just(0L)), concurrency)
+        .reduce(0L, Long::sum)
+        .block();
+    LOGGER.info("Warm-up pinged {} KV endpoints and primed {} of {} vBuckets", endpoints, primed, keys.size());
+    if (collections.length > 1) {
+      Long resolved = Flux.fromArray(collections)
+          .flatMap(target -> target.reactive().exists(keys.get(0))
+              .map(result -> 1L)
+              .onErrorResume(e -> Mono.just(0L)), concurrency)
+          .reduce(0L, Long::sum)
+          .block();
+      LOGGER.info("Warm-up resolved {} of {} collections", resolved, collections.length);
+    }
+  }
+
+  private static int partitions(Bucket bucket) {
+    BucketConfig config = bucket.core().clusterConfig().bucketConfig(bucket.name());
+    if (config instanceof CouchbaseBucketConfig) {
+      return ((CouchbaseBucketConfig) config).numberOfPartitions();
+    }
+    return DEFAULT_PARTITIONS;
+  }
+
+  /**
+   * Generate one key for each vBucket, using the same CRC32 key hash as the SDK.
+   * @param partitions The number of vBuckets.
+   */
+  static List<String> partitionKeys(int partitions) {
+    List<String> keys = new ArrayList<>(partitions);
+    BitSet covered = new BitSet(partitions);
+    CRC32 crc = new CRC32();
+    for (int i = 0; keys.size() < partitions; i++) {
+      String key = KEY_PREFIX + i;
+      crc.reset();
+      crc.update(key.getBytes(StandardCharsets.UTF_8));
+      int partition = (int) ((crc.getValue() >> 16) & 0x7fff) & (partitions - 1);
+      if (!covered.get(partition)) {
+        covered.set(partition);
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  private ClusterWarmup() {
+    super();
+  }
+}
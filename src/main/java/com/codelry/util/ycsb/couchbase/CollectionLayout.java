@@ -0,0 +1,96 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.Status;
+
+import java.util.Properties;
+
+/**
+ * The collections the YCSB table is spread over.
+ * With {@code couchbase.scopes} scopes of {@code couchbase.collections} collections each, every record key maps to
+ * one collection by a stable hash, so reads, writes and scans of a key always use the same collection. A single scope
+ * keeps the {@code couchbase.scope} name, and more scopes are named {@code scope0}, {@code scope1}, and so on. When
+ * the table spans more than one collection, the collections in each scope are named {@code collection0},
+ * {@code collection1}, and so on; otherwise the table is the single {@code couchbase.collection}.
+ * Operations are counted per collection in the {@code COLLECTIONS} measurement when there is more than one.
+ */
+public final class CollectionLayout {
+  public static final String COUCHBASE_SCOPES = "couchbase.scopes";
+  public static final String COUCHBASE_COLLECTIONS = "couchbase.collections";
+  public static final String MEASUREMENT = "COLLECTIONS";
+  private final String[] scopes;
+  private final String[] collections;
+  private final String[] keyspaces;
+  private final Status[] counters;
+
+  private CollectionLayout(String bucket, String[] scopes, String[] collections) {
+    this.scopes = scopes;
+    this.collections = collections;
+    this.keyspaces = new String[scopes.length];
+    this.counters = new Status[scopes.length];
+    for (int i = 0; i < scopes.length; i++) {
+      keyspaces[i] = bucket + "." + scopes[i] + "." + collections[i];
+      counters[i] = new Status(scopes[i] + "." + collections[i], "Operations on the collection");
+    }
+  }
+
+  public static CollectionLayout fromProperties(Properties properties) {
+    String bucket = properties.getProperty(CouchbaseClientBinding.COUCHBASE_BUCKET, "ycsb");
+    String scope = properties.getProperty(CouchbaseClientBinding.COUCHBASE_SCOPE, "_default");
+    String collection = properties.getProperty(CouchbaseClientBinding.COUCHBASE_COLLECTION, "_default");
+    int scopeCount = Integer.parseInt(properties.getProperty(COUCHBASE_SCOPES, "1"));
+    int collectionCount = Integer.parseInt(properties.getProperty(COUCHBASE_COLLECTIONS, "1"));
+    if (scopeCount < 1 || collectionCount < 1) {
+      throw new IllegalArgumentException(COUCHBASE_SCOPES + " and " + COUCHBASE_COLLECTIONS + " must be at least 1");
+    }
+    int size = scopeCount * collectionCount;
+    String[] scopes = new String[size];
+    String[] collections = new String[size];
+    for (int s = 0; s < scopeCount; s++) {
+      for (int c = 0; c < collectionCount; c++) {
+        int index = s * collectionCount + c;
+        scopes[index] = scopeCount == 1 ? scope : "scope" + s;
+        collections[index] = size == 1 ? collection : "collection" + c;
+      }
+    }
+    return new CollectionLayout(bucket, scopes, collections);
+  }
+
+  public int size() {
+    return scopes.length;
+  }
+
+  public String scope(int index) {
+    return scopes[index];
+  }
+
+  public String collection(int index) {
+    return collections[index];
+  }
+
+  /**
+   * The {@code bucket.scope.collection} name of a collection for SQL++ statements.
+   */
+  public String keyspace(int index) {
+    return keyspaces[index];
+  }
+
+  /**
+   * The collection a record key belongs to. The key hash is multiplied by a golden ratio constant and the high bits
+   * are used, since the low bits of the product only depend on the low bits of the hash and would line up with the
+   * shard chosen from the key hash when both counts are powers of two.
+   * @param key The record key.
+   */
+  public int index(String key) {
+    if (scopes.length == 1) {
+      return 0;
+    }
+    return ((key.hashCode() * 0x9E3779B9) >>> 16) % scopes.length;
+  }
+
+  /**
+   * Count an operation on a collection.
+   */
+  public void count(int index) {
+    OperationMetrics.status(MEASUREMENT, counters[index]);
+  }
+}
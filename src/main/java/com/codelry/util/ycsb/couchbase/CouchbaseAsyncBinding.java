@@ -0,0 +1,211 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.*;
+import com.couchbase.client.core.error.CasMismatchException;
+import com.couchbase.client.core.error.DocumentNotFoundException;
+import com.couchbase.client.java.AsyncCollection;
+import com.couchbase.client.java.kv.MutateInSpec;
+import com.couchbase.client.java.kv.MutationResult;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A pipelined variant of the Couchbase binding that keeps a window of KV operations in flight per YCSB thread.
+ * Operations return {@link Status#BATCHED_OK} once dispatched, and the latency of each request is recorded against
+ * its own start time under an {@code ASYNC-} prefixed measurement when the response arrives.
+ * When every slot of the window is taken, the operation waits for a free slot and the wait is recorded in the
+ * {@code ASYNC-BACKPRESSURE} measurement.
+ */
+public class CouchbaseAsyncBinding extends CouchbaseClientBinding {
+  public static final String COUCHBASE_ASYNC_WINDOW = "couchbase.asyncWindow";
+  public static final String ASYNC_PREFIX = "ASYNC-";
+  public static final String BACKPRESSURE_MEASUREMENT = "ASYNC-BACKPRESSURE";
+  private static final LongAdder IN_FLIGHT = new LongAdder();
+  private int windowSize;
+  private Semaphore window;
+  private long intendedNanos;
+
+  @Override
+  public void init() throws DBException {
+    Properties properties = getProperties();
+    windowSize = Integer.parseInt(properties.getProperty(COUCHBASE_ASYNC_WINDOW, "64"));
+    if (windowSize < 1) {
+      throw new DBException(COUCHBASE_ASYNC_WINDOW + " must be at least 1");
+    }
+    if (Integer.parseInt(properties.getProperty(TransactionBatch.COUCHBASE_TRANSACTION_SIZE, "0")) > 0) {
+      throw new DBException(TransactionBatch.COUCHBASE_TRANSACTION_SIZE + " is not supported by the async binding");
+    }
+    if (ReadMode.fromProperty(properties.getProperty(COUCHBASE_READ_MODE, "active")) != ReadMode.ACTIVE) {
+      throw new DBException(COUCHBASE_READ_MODE + " is not supported by the async binding");
+    }
+    if (Integer.parseInt(properties.getProperty(NearCache.COUCHBASE_NEAR_CACHE_SIZE, "0")) > 0) {
+      throw new DBException(NearCache.COUCHBASE_NEAR_CACHE_SIZE + " is not supported by the async binding");
+    }
+    if (properties.getProperty(SingleFlight.COUCHBASE_SINGLE_FLIGHT, "false").equals("true")) {
+      throw new DBException(SingleFlight.COUCHBASE_SINGLE_FLIGHT + " is not supported by the async binding");
+    }
+    super.init();
+    window = new Semaphore(windowSize);
+  }
+
+  /**
+   * Wait for all outstanding requests issued by this thread to complete.
+   */
+  @Override
+  public void cleanup() {
+    try {
+      window.acquire(windowSize);
+      window.release(windowSize);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    super.cleanup();
+  }
+
+  @Override
+  public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
+    Shard shard = select(key);
+    String[] names = projection(fields);
+    if (names != null) {
+      return submit(shard, "READ", () -> collection.async().lookupIn(key, lookupSpecs(names)));
+    }
+    return submit(shard, "READ", () -> collection.async().get(key, GET_OPTIONS));
+  }
+
+  @Override
+  public Status update(final String table, final String key, final Map<String, ByteIterator> values) {
+    Shard shard = select(key);
+    AsyncCollection target = collection.async();
+    if (replaces(values) && values.size() >= fieldCount) {
+      OperationMetrics.status(UPDATE_PATH_MEASUREMENT, PATH_REPLACE);
+      byte[] document = transcoder.encode(values).encoded();
+      return submit(shard, "UPDATE", () -> target.replace(key, document, REPLACE_OPTIONS));
+    }
+    if (replaces(values)) {
+      OperationMetrics.status(UPDATE_PATH_MEASUREMENT, PATH_MERGE);
+      return submit(shard, "UPDATE", () -> merge(target, key, values, 1));
+    }
+    OperationMetrics.status(UPDATE_PATH_MEASUREMENT, PATH_SUBDOC);
+    List<MutateInSpec> specs = upsertSpecs(values, new ArrayList<>(values.size()));
+    return submit(shard, "UPDATE", () -> target.mutateIn(key, specs, MUTATE_IN_OPTIONS));
+  }
+
+  /**
+   * Read the document, merge the fields and replace it with CAS, reading it again when another client changed it
+   * in between, up to the same number of attempts as the blocking binding.
+   */
+  private CompletableFuture<MutationResult> merge(AsyncCollection target, String key,
+                                                  Map<String, ByteIterator> values, int attempt) {
+    return target.get(key, GET_OPTIONS)
+        .thenCompose(current -> {
+          @SuppressWarnings("unchecked")
+          Map<String, ByteIterator> doc = current.contentAs(Map.class);
+          doc.putAll(values);
+          return target.replace(key, doc, replaceOptions(current.cas()));
+        })
+        .exceptionallyCompose(error -> {
+          Throwable cause = unwrap(error);
+          if (cause instanceof CasMismatchException && attempt < MAX_REPLACE_ATTEMPTS) {
+            return merge(target, key, values, attempt + 1);
+          }
+          return CompletableFuture.failedFuture(cause);
+        });
+  }
+
+  @Override
+  public Status insert(final String table, final String key, final Map<String, ByteIterator> values) {
+    Shard shard = select(key);
+    return submit(shard, "INSERT", () -> collection.async().upsert(key, values, UPSERT_OPTIONS));
+  }
+
+  @Override
+  public Status delete(final String table, final String key) {
+    Shard shard = select(key);
+    return submit(shard, "DELETE", () -> collection.async().remove(key));
+  }
+
+  /**
+   * The number of requests dispatched by all threads that have not completed.
+   */
+  public static long inFlight() {
+    return IN_FLIGHT.sum();
+  }
+
+  /**
+   * Set the time the next operation was scheduled to be sent, for drivers that send operations on a fixed schedule.
+   * The latency of that operation is also recorded from the scheduled time as an intended latency, so time spent
+   * waiting for the window or behind a late schedule is not hidden.
+   * @param intendedNanos The scheduled send time in {@link System#nanoTime()} units.
+   */
+  public void schedule(long intendedNanos) {
+    this.intendedNanos = intendedNanos;
+  }
+
+  /**
+   * Dispatch a request once a slot in the window is free and record its outcome on completion.
+   * @param shard The shard the request is sent to, which records its latency on completion.
+   * @param operation The operation name used for measurements.
+   * @param request Supplier that issues the asynchronous request.
+   */
+  private Status submit(Shard shard, String operation, Supplier<CompletableFuture<?>> request) {
+    long intended = intendedNanos;
+    intendedNanos = 0;
+    if (!window.tryAcquire()) {
+      long waitStart = System.nanoTime();
+      try {
+        window.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return Status.ERROR;
+      }
+      OperationMetrics.measure(BACKPRESSURE_MEASUREMENT, waitStart);
+    }
+    long start = System.nanoTime();
+    IN_FLIGHT.increment();
+    try {
+      request.get().whenComplete((r, t) -> {
+        IN_FLIGHT.decrement();
+        shard.record(start);
+        complete(operation, start, intended, t);
+        window.release();
+      });
+      return Status.BATCHED_OK;
+    } catch (Throwable t) {
+      IN_FLIGHT.decrement();
+      window.release();
+      ErrorCounters.record(ASYNC_PREFIX + operation, t);
+      return Status.ERROR;
+    }
+  }
+
+  private void complete(String operation, long start, long intended, Throwable error) {
+    String name = ASYNC_PREFIX + operation;
+    OperationMetrics.measure(name, start);
+    if (intended != 0) {
+      OperationMetrics.measureIntended(name, intended);
+    }
+    Status status;
+    if (error == null) {
+      status = Status.OK;
+    } else {
+      Throwable cause = unwrap(error);
+      if (cause instanceof DocumentNotFoundException) {
+        status = Status.NOT_FOUND;
+      } else {
+        ErrorCounters.record(name, cause);
+        status = Status.ERROR;
+      }
+    }
+    OperationMetrics.status(name, status);
+    MetricsServer.record(name, start, status);
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+  }
+}
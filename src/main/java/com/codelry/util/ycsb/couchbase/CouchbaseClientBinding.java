@@ -6,17 +6,29 @@ import static java.lang.Math.min;
 import com.codelry.util.cbdb3.CouchbaseConfig;
 import com.codelry.util.ycsb.*;
 import com.couchbase.client.core.env.*;
+import com.couchbase.client.core.error.CasMismatchException;
 import com.couchbase.client.core.error.DocumentNotFoundException;
+import com.couchbase.client.core.error.DocumentUnretrievableException;
 import com.couchbase.client.java.*;
+import com.couchbase.client.java.codec.Transcoder;
 import com.couchbase.client.java.Collection;
 import com.couchbase.client.core.msg.kv.DurabilityLevel;
 import com.couchbase.client.java.json.JsonArray;
+import com.couchbase.client.java.query.QueryOptions;
+import com.couchbase.client.java.query.QueryScanConsistency;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
 
 import com.couchbase.client.java.kv.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import org.apache.logging.log4j.Level;
@@ -34,22 +46,102 @@ public class CouchbaseClientBinding extends DB {
   public static final String COUCHBASE_BUCKET = "couchbase.bucket";
   public static final String COUCHBASE_SCOPE = "couchbase.scope";
   public static final String COUCHBASE_COLLECTION = "couchbase.collection";
+  public static final String COUCHBASE_CODEC = "couchbase.codec";
+  public static final String COUCHBASE_JSON_CODEC = "couchbase.jsonCodec";
+  public static final String COUCHBASE_SCAN_MODE = "couchbase.scanMode";
+  public static final String COUCHBASE_SCAN_CONCURRENCY = "couchbase.scanConcurrency";
+  public static final String COUCHBASE_SCAN_CONSISTENCY = "couchbase.scanConsistency";
+  public static final String COUCHBASE_MAX_PARALLELISM = "couchbase.maxParallelism";
+  public static final String COUCHBASE_SCAN_BATCH_ITEMS = "couchbase.scanBatchItems";
+  public static final String COUCHBASE_SCAN_BATCH_BYTES = "couchbase.scanBatchBytes";
+  public static final String COUCHBASE_TRACING = "couchbase.tracing";
+  public static final String COUCHBASE_LOAD_BATCH_SIZE = "couchbase.loadBatchSize";
+  public static final String COUCHBASE_LOAD_BATCH_AGE = "couchbase.loadBatchMaxAgeMs";
+  public static final String COUCHBASE_LOAD_BATCH_CONCURRENCY = "couchbase.loadBatchConcurrency";
+  public static final String COUCHBASE_WARMUP = "couchbase.warmup";
+  public static final String COUCHBASE_SHARDS = "couchbase.shards";
+  public static final String COUCHBASE_SHARD_ASSIGNMENT = "couchbase.shardAssignment";
+  public static final String COUCHBASE_DEDICATED_ENVIRONMENT = "couchbase.dedicatedEnvironment";
+  private static final String[] CAPELLA_PROPERTIES = {"capella.token", "capella.project.name", "capella.database.name"};
+  public static final String COUCHBASE_READ_MODE = "couchbase.readMode";
+  public static final String COUCHBASE_HEDGE_DELAY = "couchbase.hedgeDelayUs";
+  public static final String COUCHBASE_HEDGE_PERCENTILE = "couchbase.hedgePercentile";
+  public static final String COUCHBASE_UPDATE_MODE = "couchbase.updateMode";
+  public static final String COUCHBASE_UPDATE_REPLACE_THRESHOLD = "couchbase.updateReplaceThreshold";
+  public static final String READ_SOURCE_MEASUREMENT = "READ-SOURCE";
+  public static final String UPDATE_PATH_MEASUREMENT = "UPDATE-PATH";
+  public static final String READ_HEDGE_MEASUREMENT = "READ-HEDGE";
+  private static final Status SOURCE_ACTIVE = new Status("ACTIVE", "Read from the active vBucket");
+  private static final Status SOURCE_REPLICA = new Status("REPLICA", "Read from a replica, possibly stale");
+  private static final Status HEDGE_SENT = new Status("SENT", "Replica read sent after the hedge delay");
+  protected static final Status PATH_SUBDOC = new Status("SUBDOC", "Fields updated with a sub-document mutation");
+  protected static final Status PATH_REPLACE = new Status("REPLACE", "Whole document replaced");
+  protected static final Status PATH_MERGE = new Status("MERGE", "Document read, merged and replaced with CAS");
+  public static final String STARTUP_MEASUREMENT = "STARTUP";
+  private static final int MAX_LOOKUP_SPECS = 16;
+  private static final String SCAN_ID_COLUMN = "__id";
+  private static final Comparator<ScanRow> SCAN_ORDER = Comparator.comparing(ScanRow::id);
+  protected static final int MAX_REPLACE_ATTEMPTS = 10;
   private static final AtomicInteger OPEN_CLIENTS = new AtomicInteger(0);
-  private static final Object INIT_COORDINATOR = new Object();
+  private static final AtomicInteger NEXT_SHARD = new AtomicInteger(0);
+  private static final ReentrantLock INIT_COORDINATOR = new ReentrantLock();
   private static volatile Duration TTL = Duration.ofSeconds(0);
-  private static final GetOptions GET_OPTIONS = GetOptions.getOptions().transcoder(MapTranscoder.INSTANCE);
-  private static volatile MutateInOptions MUTATE_IN_OPTIONS = MutateInOptions.mutateInOptions()
+  protected static volatile Transcoder transcoder = MapTranscoder.INSTANCE;
+  protected static volatile boolean binaryCodec = false;
+  protected static volatile GetOptions GET_OPTIONS = GetOptions.getOptions().transcoder(MapTranscoder.INSTANCE);
+  protected static volatile MutateInOptions MUTATE_IN_OPTIONS = MutateInOptions.mutateInOptions()
       .expiry(TTL)
       .durability(DurabilityLevel.NONE);
-  private static volatile UpsertOptions UPSERT_OPTIONS = UpsertOptions.upsertOptions()
+  protected static volatile UpsertOptions UPSERT_OPTIONS = UpsertOptions.upsertOptions()
       .expiry(TTL)
       .durability(DurabilityLevel.NONE)
       .transcoder(MapTranscoder.INSTANCE);
-  private static volatile Cluster cluster;
-  private static volatile Bucket bucket;
-  private static volatile Collection collection;
-  private static String query;
+  protected static volatile ReplaceOptions REPLACE_OPTIONS = ReplaceOptions.replaceOptions()
+      .expiry(TTL)
+      .durability(DurabilityLevel.NONE)
+      .transcoder(MapTranscoder.INSTANCE);
+  protected static volatile UpdateMode updateMode = UpdateMode.SUBDOC;
+  private static volatile double replaceThreshold = 0.5;
+  protected static volatile int fieldCount = 10;
+  private static volatile Shard[] shards;
+  private static volatile MetricsServer metricsServer;
+  private static volatile boolean keySharding = false;
+  private static volatile CollectionLayout layout;
+  private static volatile String[] scanQueries;
+  private static volatile String[] documentQueries;
+  private static volatile int scanConcurrency = 256;
+  private static volatile int maxParallelism = 0;
+  private static volatile QueryScanConsistency scanConsistency = QueryScanConsistency.NOT_BOUNDED;
+  protected static volatile ScanMode scanMode = ScanMode.QUERY;
+  private static volatile int keyDigits = 1;
+  protected static volatile ReadMode readMode = ReadMode.ACTIVE;
+  protected static volatile NearCache nearCache;
+  protected static volatile SingleFlight singleFlight;
+  private static volatile HedgeDelay hedgeDelay = new HedgeDelay(1000, 0);
+  private static volatile GetAnyReplicaOptions GET_ANY_REPLICA_OPTIONS = GetAnyReplicaOptions.getAnyReplicaOptions();
+  private static volatile GetAllReplicasOptions GET_ALL_REPLICAS_OPTIONS = GetAllReplicasOptions.getAllReplicasOptions();
+  private static volatile ScanOptions SCAN_OPTIONS = ScanOptions.scanOptions();
   private static volatile DurabilityLevel durability = DurabilityLevel.NONE;
+  protected static volatile RetryPolicy READ_RETRY = RetryPolicy.NONE;
+  protected static volatile RetryPolicy UPDATE_RETRY = RetryPolicy.NONE;
+  protected static volatile RetryPolicy INSERT_RETRY = RetryPolicy.NONE;
+  protected static volatile RetryPolicy DELETE_RETRY = RetryPolicy.NONE;
+  protected static volatile RetryPolicy SCAN_RETRY = RetryPolicy.NONE;
+  private BatchLoader batchLoader;
+  private TransactionBatch transactionBatch;
+  private Shard shard;
+  protected Cluster cluster;
+  protected Bucket bucket;
+  protected Collection collection;
+  private int keyspace;
+  private final List<MutateInSpec> updateSpecs = new ArrayList<>();
+  private final SingleFlight.Loader documentLoader = (key, document) -> readDocument(key, null, document);
+
+  /**
+   * A scanned record with its document ID and the {@link CollectionLayout} index of its collection. The record is
+   * null for scans that only read IDs.
+   */
+  private record ScanRow(String id, int index, HashMap<String, ByteIterator> record) {}
 
   @Override
   public void init() throws DBException {
@@ -57,53 +149,279 @@ public class CouchbaseClientBinding extends DB {
     properties.putAll(getProperties());
 
     String bucketName = properties.getProperty(COUCHBASE_BUCKET, "ycsb");
-    String scopeName = properties.getProperty(COUCHBASE_SCOPE, "_default");
-    String collectionName = properties.getProperty(COUCHBASE_COLLECTION, "_default");
     boolean debug = getProperties().getProperty("couchbase.debug", "false").equals("true");
-    String keySpace = bucketName + "." + scopeName + "." + collectionName;
-    query = "SELECT RAW META(t).id FROM " + keySpace + " AS t WHERE META(t).id >= $1 ORDER BY META(t).id LIMIT $2;";
+    CollectionLayout collections = CollectionLayout.fromProperties(properties);
+    String[] queries = new String[collections.size()];
+    String[] documents = new String[collections.size()];
+    for (int i = 0; i < collections.size(); i++) {
+      queries[i] = "SELECT RAW META(t).id FROM " + collections.keyspace(i)
+          + " AS t WHERE META(t).id >= $1 ORDER BY META(t).id LIMIT $2;";
+      documents[i] = documentQuery(collections.keyspace(i), null);
+    }
+    layout = collections;
+    scanQueries = queries;
+    documentQueries = documents;
     durability =
         setDurabilityLevel(Integer.parseInt(properties.getProperty("couchbase.durability", "0")));
     int ttlSeconds = Integer.parseInt(properties.getProperty("couchbase.ttlSeconds", "0"));
 
+    String codec = properties.getProperty(COUCHBASE_CODEC, "native");
+    String jsonCodec = properties.getProperty(COUCHBASE_JSON_CODEC, "databind");
+    binaryCodec = codec.equals("binary");
+    if (binaryCodec) {
+      transcoder = BinaryMapTranscoder.INSTANCE;
+    } else if (codec.equals("native") || codec.equals("json")) {
+      transcoder = jsonCodec.equals("streaming") ? StreamingMapTranscoder.INSTANCE : MapTranscoder.INSTANCE;
+    } else {
+      throw new DBException("Unknown " + COUCHBASE_CODEC + " value: " + codec);
+    }
+    GET_OPTIONS = GetOptions.getOptions().transcoder(transcoder);
+    GET_ANY_REPLICA_OPTIONS = GetAnyReplicaOptions.getAnyReplicaOptions().transcoder(transcoder);
+    GET_ALL_REPLICAS_OPTIONS = GetAllReplicasOptions.getAllReplicasOptions().transcoder(transcoder);
+
+    readMode = ReadMode.fromProperty(properties.getProperty(COUCHBASE_READ_MODE, "active"));
+    hedgeDelay = new HedgeDelay(Long.parseLong(properties.getProperty(COUCHBASE_HEDGE_DELAY, "1000")),
+        Double.parseDouble(properties.getProperty(COUCHBASE_HEDGE_PERCENTILE, "0")));
+
+    scanMode = ScanMode.valueOf(properties.getProperty(COUCHBASE_SCAN_MODE, "query").toUpperCase());
+    if (scanMode == ScanMode.DOCUMENT && binaryCodec) {
+      throw new DBException(COUCHBASE_SCAN_MODE + "=document can't read documents written with "
+          + COUCHBASE_CODEC + "=binary");
+    }
+    if (scanMode == ScanMode.RANGE) {
+      if (!properties.getProperty("insertorder", "hashed").equals("ordered")) {
+        throw new DBException(COUCHBASE_SCAN_MODE + "=range requires insertorder=ordered, since hashed keys have no "
+            + "order a bounded range scan can follow");
+      }
+      keyDigits = Integer.parseInt(properties.getProperty("zeropadding", "1"));
+      long lastKey = Long.parseLong(properties.getProperty("recordcount", "0"))
+          + Long.parseLong(properties.getProperty("operationcount", "0"));
+      int lastKeyDigits = Long.toString(lastKey).length();
+      if (lastKeyDigits > keyDigits) {
+        throw new DBException(COUCHBASE_SCAN_MODE + "=range requires zeropadding=" + lastKeyDigits
+            + " or more, so that every key has the same length and sorts in key number order");
+      }
+    }
+    scanConcurrency = Integer.parseInt(properties.getProperty(COUCHBASE_SCAN_CONCURRENCY, "256"));
+    maxParallelism = Integer.parseInt(properties.getProperty(COUCHBASE_MAX_PARALLELISM, "0"));
+    scanConsistency = QueryScanConsistency.valueOf(
+        properties.getProperty(COUCHBASE_SCAN_CONSISTENCY, "not_bounded").toUpperCase());
+    SCAN_OPTIONS = ScanOptions.scanOptions()
+        .transcoder(transcoder)
+        .concurrency(scanConcurrency)
+        .batchItemLimit(Integer.parseInt(properties.getProperty(COUCHBASE_SCAN_BATCH_ITEMS, "50")))
+        .batchByteLimit(Integer.parseInt(properties.getProperty(COUCHBASE_SCAN_BATCH_BYTES, "15000")));
+
     if (ttlSeconds > 0 || durability != DurabilityLevel.NONE) {
       TTL = Duration.ofSeconds(ttlSeconds);
-      UPSERT_OPTIONS = UpsertOptions.upsertOptions()
-          .expiry(TTL)
-          .durability(durability)
-          .transcoder(MapTranscoder.INSTANCE);
       MUTATE_IN_OPTIONS = MutateInOptions.mutateInOptions()
           .expiry(TTL)
           .durability(durability);
     }
+    UPSERT_OPTIONS = UpsertOptions.upsertOptions()
+        .expiry(TTL)
+        .durability(durability)
+        .transcoder(transcoder);
+    REPLACE_OPTIONS = ReplaceOptions.replaceOptions()
+        .expiry(TTL)
+        .durability(durability)
+        .transcoder(transcoder);
+
+    updateMode = UpdateMode.fromProperty(properties.getProperty(COUCHBASE_UPDATE_MODE, "subdoc"));
+    replaceThreshold = Double.parseDouble(properties.getProperty(COUCHBASE_UPDATE_REPLACE_THRESHOLD, "0.5"));
+    fieldCount = Integer.parseInt(properties.getProperty("fieldcount", "10"));
 
     if (debug) {
       Configurator.setLevel(LOGGER.getName(), Level.DEBUG);
     }
 
-    synchronized (INIT_COORDINATOR) {
-      try {
-        CouchbaseConfig config = new CouchbaseConfig().fromProperties(properties)
-            .kvTimeout(10)
-            .connectTimeout(20)
-            .queryTimeout(90);
-        CouchbaseConnect db = CouchbaseConnect.getInstance();
-        db.connect(config);
+    READ_RETRY = RetryPolicy.fromProperties(properties, "read");
+    UPDATE_RETRY = RetryPolicy.fromProperties(properties, "update");
+    INSERT_RETRY = RetryPolicy.fromProperties(properties, "insert");
+    DELETE_RETRY = RetryPolicy.fromProperties(properties, "delete");
+    SCAN_RETRY = RetryPolicy.fromProperties(properties, "scan");
+
+    OperationEvent.configure(Long.parseLong(properties.getProperty(OperationEvent.COUCHBASE_JFR_THRESHOLD, "0")));
+    ErrorCounters.configure(Long.parseLong(properties.getProperty(ErrorCounters.COUCHBASE_ERROR_LOG_INTERVAL, "10000")));
+
+    boolean tracing = properties.getProperty(COUCHBASE_TRACING, "false").equals("true");
+
+    int nearCacheSize = Integer.parseInt(properties.getProperty(NearCache.COUCHBASE_NEAR_CACHE_SIZE, "0"));
+    boolean coalesceReads = properties.getProperty(SingleFlight.COUCHBASE_SINGLE_FLIGHT, "false").equals("true");
+
+    String assignment = properties.getProperty(COUCHBASE_SHARD_ASSIGNMENT, "thread");
+    if (!assignment.equals("thread") && !assignment.equals("key")) {
+      throw new DBException("Unknown " + COUCHBASE_SHARD_ASSIGNMENT + " value: " + assignment);
+    }
+    keySharding = assignment.equals("key");
 
-        cluster = db.getCluster();
-        bucket = cluster.bucket(bucketName);
-        bucket.waitUntilReady(Duration.ofSeconds(5));
-        collection = bucket.scope(scopeName).collection(collectionName);
-      } catch(Exception e) {
-        logError(e);
-        throw new DBException(e);
+    int transactionSize = Integer.parseInt(properties.getProperty(TransactionBatch.COUCHBASE_TRANSACTION_SIZE, "0"));
+    if (transactionSize > 0) {
+      if (binaryCodec) {
+        throw new DBException(TransactionBatch.COUCHBASE_TRANSACTION_SIZE + " can't be used with "
+            + COUCHBASE_CODEC + "=binary, since transactions read and write JSON documents");
+      }
+      if (Boolean.parseBoolean(properties.getProperty("dataintegrity", "false"))) {
+        throw new DBException(TransactionBatch.COUCHBASE_TRANSACTION_SIZE + " can't be used with dataintegrity=true, "
+            + "since transactional reads don't return the record");
+      }
+      if (keySharding && Integer.parseInt(properties.getProperty(COUCHBASE_SHARDS, "1")) > 1) {
+        throw new DBException(TransactionBatch.COUCHBASE_TRANSACTION_SIZE + " requires a single shard or "
+            + COUCHBASE_SHARD_ASSIGNMENT + "=thread");
       }
     }
 
-    OPEN_CLIENTS.incrementAndGet();
+    INIT_COORDINATOR.lock();
+    try {
+      if (shards == null) {
+        connect(properties, tracing, bucketName);
+      }
+      shard = shards[Math.floorMod(NEXT_SHARD.getAndIncrement(), shards.length)];
+      use(shard);
+      if (nearCache == null && nearCacheSize > 0) {
+        nearCache = new NearCache(nearCacheSize,
+            Long.parseLong(properties.getProperty(NearCache.COUCHBASE_NEAR_CACHE_TTL, "10000")),
+            Integer.parseInt(properties.getProperty(NearCache.COUCHBASE_NEAR_CACHE_STRIPES, "16")));
+      }
+      if (singleFlight == null && coalesceReads) {
+        singleFlight = new SingleFlight(
+            Long.parseLong(properties.getProperty(SingleFlight.COUCHBASE_SINGLE_FLIGHT_WINDOW, "0")));
+      }
+      OPEN_CLIENTS.incrementAndGet();
+    } finally {
+      INIT_COORDINATOR.unlock();
+    }
+
+    int loadBatchSize = Integer.parseInt(properties.getProperty(COUCHBASE_LOAD_BATCH_SIZE, "0"));
+    boolean loadPhase = !Boolean.parseBoolean(properties.getProperty(Benchmark.DO_TRANSACTIONS_PROPERTY, "true"));
+    if (loadBatchSize > 0 && loadPhase) {
+      long loadBatchAge = Long.parseLong(properties.getProperty(COUCHBASE_LOAD_BATCH_AGE, "1000"));
+      int loadBatchConcurrency = Integer.parseInt(properties.getProperty(COUCHBASE_LOAD_BATCH_CONCURRENCY, "128"));
+      batchLoader = new BatchLoader(UPSERT_OPTIONS, loadBatchSize, loadBatchAge, loadBatchConcurrency);
+    }
+
+    if (transactionSize > 0) {
+      int transactionDurability =
+          Integer.parseInt(properties.getProperty(TransactionBatch.COUCHBASE_TRANSACTION_DURABILITY, "1"));
+      transactionBatch = new TransactionBatch(cluster, transactionSize, setDurabilityLevel(transactionDurability),
+          Long.parseLong(properties.getProperty(TransactionBatch.COUCHBASE_TRANSACTION_TIMEOUT, "15000")));
+    }
   }
 
-  private void logError(Exception error) {
+  /**
+   * Open the connections shared by all client threads, and optionally warm them up before the timed phase.
+   * A single connection uses the shared CouchbaseConnect instance unless the binding needs its own SDK environment
+   * or {@code couchbase.dedicatedEnvironment} is set; with more than one shard every connection has its own
+   * environment. An environment of the binding's own is disconnected when the last client thread finishes, so the
+   * next connection picks up changed settings.
+   * The time taken is reported in the {@code STARTUP} measurement.
+   */
+  private static void connect(Properties properties, boolean tracing, String bucketName) throws DBException {
+    long start = System.nanoTime();
+    int count = Integer.parseInt(properties.getProperty(COUCHBASE_SHARDS, "1"));
+    if (count < 1) {
+      throw new DBException(COUCHBASE_SHARDS + " must be at least 1");
+    }
+    boolean warmup = properties.getProperty(COUCHBASE_WARMUP, "true").equals("true");
+    int kvEndpoints = Integer.parseInt(properties.getProperty("couchbase.kvEndpoints", "8"));
+    boolean metrics = Integer.parseInt(properties.getProperty(MetricsServer.COUCHBASE_METRICS_PORT, "0")) > 0;
+    SdkMeter meter = metrics ? new SdkMeter() : null;
+    boolean dedicated = properties.getProperty(COUCHBASE_DEDICATED_ENVIRONMENT, "false").equals("true");
+    boolean owned = tracing || metrics || dedicated || count > 1;
+    if (owned) {
+      for (String name : CAPELLA_PROPERTIES) {
+        if (properties.getProperty(name) != null) {
+          throw new DBException(name + " is set, but the Capella connection string can't be resolved when the client "
+              + "owns its SDK environment (tracing, metrics, sharding or " + COUCHBASE_DEDICATED_ENVIRONMENT
+              + "); remove the Capella properties and set couchbase.hostname");
+        }
+      }
+    }
+    Shard[] connected = new Shard[count];
+    try {
+      for (int i = 0; i < count; i++) {
+        Cluster shardCluster;
+        if (owned) {
+          shardCluster = ClusterConnector.connect(properties, env -> {
+            if (tracing) {
+              env.requestTracer(new LatencyTracer());
+            }
+            if (meter != null) {
+              env.meter(meter);
+            }
+          });
+        } else {
+          CouchbaseConfig config = new CouchbaseConfig().fromProperties(properties)
+              .kvTimeout(10)
+              .connectTimeout(20)
+              .queryTimeout(90);
+          CouchbaseConnect db = CouchbaseConnect.getInstance();
+          db.connect(config);
+          shardCluster = db.getCluster();
+        }
+        Bucket shardBucket = shardCluster.bucket(bucketName);
+        shardBucket.waitUntilReady(Duration.ofSeconds(5));
+        CollectionLayout collections = layout;
+        Collection[] shardCollections = new Collection[collections.size()];
+        for (int c = 0; c < shardCollections.length; c++) {
+          shardCollections[c] = shardBucket.scope(collections.scope(c)).collection(collections.collection(c));
+        }
+        connected[i] = new Shard(i, shardCluster, shardBucket, shardCollections, owned, count > 1);
+        if (warmup) {
+          ClusterWarmup.run(shardBucket, shardCollections, kvEndpoints * 16);
+        }
+      }
+    } catch(Exception e) {
+      logError(e);
+      for (Shard opened : connected) {
+        if (opened != null) {
+          opened.disconnect();
+        }
+      }
+      throw new DBException(e);
+    }
+    shards = connected;
+    try {
+      metricsServer = MetricsServer.start(properties, meter, connected);
+    } catch (Exception e) {
+      LOGGER.error("Metrics endpoint not started: {}", e.getMessage(), e);
+    }
+    OperationMetrics.measure(STARTUP_MEASUREMENT, start);
+    LOGGER.info("Connected {} shard(s) to {} in {} ms", count, bucketName,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  private void use(Shard target) {
+    cluster = target.cluster();
+    bucket = target.bucket();
+    collection = target.collection();
+  }
+
+  /**
+   * Get the shard for an operation on a key, and use the collection the key belongs to. With key assignment the
+   * shard is chosen by the key hash, otherwise every operation of a client thread uses the shard assigned to the
+   * thread.
+   * @param key The record key.
+   */
+  protected Shard select(String key) {
+    if (keySharding) {
+      Shard[] all = shards;
+      Shard target = all[Math.floorMod(key.hashCode(), all.length)];
+      if (target != shard) {
+        shard = target;
+        use(target);
+      }
+    }
+    CollectionLayout collections = layout;
+    if (collections.size() > 1) {
+      keyspace = collections.index(key);
+      collection = shard.collection(keyspace);
+      collections.count(keyspace);
+    }
+    return shard;
+  }
+
+  private static void logError(Exception error) {
     LOGGER.error(error.getMessage(), error);
   }
 
@@ -117,7 +435,37 @@ public class CouchbaseClientBinding extends DB {
   }
 
   @Override
-  public synchronized void cleanup() {
+  public void cleanup() {
+    if (transactionBatch != null) {
+      long failures = transactionBatch.flush();
+      if (failures > 0) {
+        LOGGER.error("{} operations were in transactions that did not commit", failures);
+      }
+    }
+    if (batchLoader != null) {
+      long failures = batchLoader.drain();
+      if (failures > 0) {
+        LOGGER.error("{} batched inserts failed", failures);
+      }
+    }
+    INIT_COORDINATOR.lock();
+    try {
+      if (OPEN_CLIENTS.decrementAndGet() == 0) {
+        ErrorCounters.logSummary();
+        nearCache = null;
+        singleFlight = null;
+        if (metricsServer != null) {
+          metricsServer.stop();
+          metricsServer = null;
+        }
+        for (Shard opened : shards) {
+          opened.disconnect();
+        }
+        shards = null;
+      }
+    } finally {
+      INIT_COORDINATOR.unlock();
+    }
   }
 
   /**
@@ -129,19 +477,241 @@ public class CouchbaseClientBinding extends DB {
    */
   @Override
   public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
+    Shard target = select(key);
+    if (transactionBatch != null) {
+      return transactionBatch.read(collection, key);
+    }
+    OperationEvent event = OperationEvent.begin(null);
+    long start = System.nanoTime();
+    NearCache cache = nearCache;
+    SingleFlight flights = singleFlight;
+    Status status;
+    if (cache == null && flights == null) {
+      status = readDocument(key, fields, result);
+    } else {
+      status = readShared(cache, flights, key, fields, result);
+    }
+    target.record(start);
+    OperationEvent.commit(event, "READ", key, status, start, result);
+    MetricsServer.record("READ", start, status);
+    return status;
+  }
+
+  /**
+   * Read a record through the near cache and/or by joining a read of the same key already in flight.
+   * These reads always load the whole document so it can be shared.
+   */
+  private Status readShared(NearCache cache, SingleFlight flights, String key, Set<String> fields,
+                            Map<String, ByteIterator> result) {
+    if (cache != null && cache.get(key, fields, result)) {
+      return Status.OK;
+    }
+    long version = cache != null ? cache.version(key) : 0;
+    Status status;
+    DocumentSnapshot document;
+    boolean loaded = true;
+    if (flights != null) {
+      SingleFlight.Result flight = flights.load(key, documentLoader);
+      status = flight.status();
+      document = flight.document();
+      // A shared load may have started before this reader's version was taken, so only the leader caches it.
+      loaded = flight.leader();
+    } else {
+      Map<String, ByteIterator> fetched = new HashMap<>();
+      status = readDocument(key, null, fetched);
+      document = status.isOk() ? DocumentSnapshot.of(fetched) : null;
+    }
+    if (document != null) {
+      if (cache != null && loaded) {
+        cache.put(key, document, version);
+      }
+      document.copyTo(fields, result);
+    }
+    return status;
+  }
+
+  private Status readDocument(String key, Set<String> fields, Map<String, ByteIterator> result) {
+    if (readMode != ReadMode.ACTIVE) {
+      return readReplicas(key, fields, result);
+    }
+    String[] names = projection(fields);
+    if (names != null) {
+      return readFields(key, names, result);
+    }
+    long start = System.nanoTime();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        @SuppressWarnings("unchecked")
+        Map<String, ByteIterator> doc = collection.get(key, GET_OPTIONS).contentAs(Map.class);
+        if (fields != null) {
+          doc.keySet().retainAll(fields);
+        }
+        result.putAll(doc);
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug(result.toString());
+        }
+        READ_RETRY.complete(attempt, start);
+        return Status.OK;
+      } catch (DocumentNotFoundException e) {
+        READ_RETRY.complete(attempt, start);
+        return Status.NOT_FOUND;
+      } catch (Throwable t) {
+        if (!READ_RETRY.retry(t, attempt, start)) {
+          READ_RETRY.complete(attempt, start);
+          ErrorCounters.record("READ", t);
+          return Status.ERROR;
+        }
+      }
+    }
+  }
+
+  /**
+   * Perform a sub-document read of the requested fields.
+   * @param key The record key of the record to read.
+   * @param names The fields to read.
+   * @param result A Map of field/value pairs for the result.
+   */
+  private Status readFields(String key, String[] names, Map<String, ByteIterator> result) {
+    List<LookupInSpec> specs = lookupSpecs(names);
+    long start = System.nanoTime();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        LookupInResult lookup = collection.lookupIn(key, specs);
+        addFields(lookup, names, result);
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug(result.toString());
+        }
+        READ_RETRY.complete(attempt, start);
+        return Status.OK;
+      } catch (DocumentNotFoundException e) {
+        READ_RETRY.complete(attempt, start);
+        return Status.NOT_FOUND;
+      } catch (Throwable t) {
+        if (!READ_RETRY.retry(t, attempt, start)) {
+          READ_RETRY.complete(attempt, start);
+          ErrorCounters.record("READ", t);
+          return Status.ERROR;
+        }
+      }
+    }
+  }
+
+  /**
+   * Read a whole document with a replica read mode, recording whether the result came from the active vBucket or
+   * from a replica and may be stale.
+   * @param key The record key of the record to read.
+   * @param fields The list of fields to read or null for all of them.
+   * @param result A Map of field/value pairs for the result.
+   */
+  private Status readReplicas(String key, Set<String> fields, Map<String, ByteIterator> result) {
+    long start = System.nanoTime();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        GetResult found = switch (readMode) {
+          case HEDGED -> hedgedGet(key);
+          case ANY_REPLICA -> collection.getAnyReplica(key, GET_ANY_REPLICA_OPTIONS);
+          default -> allReplicasGet(key);
+        };
+        READ_RETRY.complete(attempt, start);
+        if (found == null) {
+          return Status.NOT_FOUND;
+        }
+        boolean replica = found instanceof GetReplicaResult && ((GetReplicaResult) found).isReplica();
+        OperationMetrics.status(READ_SOURCE_MEASUREMENT, replica ? SOURCE_REPLICA : SOURCE_ACTIVE);
+        @SuppressWarnings("unchecked")
+        Map<String, ByteIterator> doc = found.contentAs(Map.class);
+        if (fields != null) {
+          doc.keySet().retainAll(fields);
+        }
+        result.putAll(doc);
+        return Status.OK;
+      } catch (DocumentNotFoundException | DocumentUnretrievableException e) {
+        READ_RETRY.complete(attempt, start);
+        return Status.NOT_FOUND;
+      } catch (Throwable t) {
+        if (!READ_RETRY.retry(t, attempt, start)) {
+          READ_RETRY.complete(attempt, start);
+          ErrorCounters.record("READ", t);
+          return Status.ERROR;
+        }
+      }
+    }
+  }
+
+  /**
+   * Send the read to the active vBucket, and if it has not answered within the hedge delay, to the replicas as well.
+   * The first successful response is returned.
+   */
+  private GetResult hedgedGet(String key) throws Throwable {
+    long start = System.nanoTime();
+    CompletableFuture<GetResult> active = collection.async().get(key, GET_OPTIONS);
+    active.thenRun(() -> hedgeDelay.record(System.nanoTime() - start));
     try {
-      @SuppressWarnings("unchecked")
-      Map<String, ByteIterator> doc = collection.get(key, GET_OPTIONS).contentAs(Map.class);
-      result.putAll(doc);
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug(result.toString());
+      try {
+        return active.get(hedgeDelay.delayNanos(), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        OperationMetrics.status(READ_HEDGE_MEASUREMENT, HEDGE_SENT);
+        CompletableFuture<GetReplicaResult> replica = collection.async().getAnyReplica(key, GET_ANY_REPLICA_OPTIONS);
+        return firstSuccessful(active, replica).get();
+      }
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Complete with the first of two reads that succeeds, or with the failure of the active read if both fail.
+   */
+  private static CompletableFuture<GetResult> firstSuccessful(CompletableFuture<GetResult> active,
+                                                              CompletableFuture<GetReplicaResult> replica) {
+    CompletableFuture<GetResult> first = new CompletableFuture<>();
+    active.thenAccept(first::complete);
+    replica.thenAccept(first::complete);
+    active.exceptionally(activeError -> {
+      replica.whenComplete((r, replicaError) -> {
+        if (replicaError != null) {
+          first.completeExceptionally(activeError);
+        }
+      });
+      return null;
+    });
+    return first;
+  }
+
+  /**
+   * Read the document from the active vBucket and every replica, preferring the active copy.
+   */
+  private GetResult allReplicasGet(String key) {
+    return collection.getAllReplicas(key, GET_ALL_REPLICAS_OPTIONS)
+        .reduce((chosen, copy) -> copy.isReplica() ? chosen : copy)
+        .orElse(null);
+  }
+
+  /**
+   * Get the field names for a projected read, or null if the whole document should be fetched.
+   * Binary documents can not be read with sub-document operations, so they are always fetched whole.
+   * @param fields The list of fields to read or null for all of them.
+   */
+  protected static String[] projection(Set<String> fields) {
+    if (binaryCodec || fields == null || fields.isEmpty() || fields.size() > MAX_LOOKUP_SPECS) {
+      return null;
+    }
+    return fields.toArray(new String[0]);
+  }
+
+  protected static List<LookupInSpec> lookupSpecs(String[] names) {
+    List<LookupInSpec> specs = new ArrayList<>(names.length);
+    for (String name : names) {
+      specs.add(LookupInSpec.get(name));
+    }
+    return specs;
+  }
+
+  protected static void addFields(LookupInResult lookup, String[] names, Map<String, ByteIterator> result) {
+    for (int i = 0; i < names.length; i++) {
+      if (lookup.exists(i)) {
+        result.put(names[i], new StringByteIterator(lookup.contentAs(i, String.class)));
       }
-      return Status.OK;
-    } catch (DocumentNotFoundException e) {
-      return Status.NOT_FOUND;
-    } catch (Throwable t) {
-      LOGGER.error("read transaction exception: {}", t.getMessage(), t);
-      return Status.ERROR;
     }
   }
 
@@ -153,19 +723,163 @@ public class CouchbaseClientBinding extends DB {
    */
   @Override
   public Status update(final String table, final String key, final Map<String, ByteIterator> values) {
-    try {
-      List<MutateInSpec> specs = new ArrayList<>(values.size());
-      for (Map.Entry<String, ByteIterator> e : values.entrySet()) {
-        specs.add(MutateInSpec.upsert(e.getKey(), e.getValue().toString()));
+    Shard target = select(key);
+    if (transactionBatch != null) {
+      return transactionBatch.update(collection, key, values);
+    }
+    OperationEvent event = OperationEvent.begin(values);
+    long start = System.nanoTime();
+    Status status;
+    if (!replaces(values)) {
+      OperationMetrics.status(UPDATE_PATH_MEASUREMENT, PATH_SUBDOC);
+      status = mutate(key, values);
+    } else if (values.size() >= fieldCount) {
+      OperationMetrics.status(UPDATE_PATH_MEASUREMENT, PATH_REPLACE);
+      status = overwrite(key, values);
+    } else {
+      OperationMetrics.status(UPDATE_PATH_MEASUREMENT, PATH_MERGE);
+      status = replace(key, values);
+    }
+    invalidate(key);
+    target.record(start);
+    OperationEvent.commit(event, "UPDATE", key, status, start, null);
+    MetricsServer.record("UPDATE", start, status);
+    return status;
+  }
+
+  /**
+   * Whether an update replaces the whole document instead of mutating the changed fields.
+   * Documents that are not JSON are always replaced, and in adaptive mode the document is replaced when the fraction
+   * of its {@code fieldcount} fields that change reaches the replace threshold.
+   * @param values The fields the update changes.
+   */
+  protected static boolean replaces(Map<String, ByteIterator> values) {
+    return switch (updateMode) {
+      case REPLACE -> true;
+      case ADAPTIVE -> binaryCodec || values.size() >= replaceThreshold * fieldCount;
+      default -> binaryCodec;
+    };
+  }
+
+  /**
+   * Fill a list with sub-document upserts of the changed fields, with each value encoded once as JSON.
+   * @param values A HashMap of field/value pairs to update in the record.
+   * @param specs The list to fill, which is cleared first.
+   */
+  protected static List<MutateInSpec> upsertSpecs(Map<String, ByteIterator> values, List<MutateInSpec> specs) {
+    specs.clear();
+    for (Map.Entry<String, ByteIterator> e : values.entrySet()) {
+      specs.add(MutateInSpec.upsert(e.getKey(), JsonStrings.encode(e.getValue())));
+    }
+    return specs;
+  }
+
+  /**
+   * Update the fields of a record with sub-document operations.
+   * @param key The record key of the record to write.
+   * @param values A HashMap of field/value pairs to update in the record.
+   */
+  private Status mutate(final String key, final Map<String, ByteIterator> values) {
+    List<MutateInSpec> specs = upsertSpecs(values, updateSpecs);
+    long start = System.nanoTime();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        collection.mutateIn(key, specs, MUTATE_IN_OPTIONS);
+        UPDATE_RETRY.complete(attempt, start);
+        return Status.OK;
+      } catch (Throwable t) {
+        if (!UPDATE_RETRY.retry(t, attempt, start)) {
+          UPDATE_RETRY.complete(attempt, start);
+          ErrorCounters.record("UPDATE", t);
+          return Status.ERROR;
+        }
       }
-      collection.mutateIn(key, specs, MUTATE_IN_OPTIONS);
-      return Status.OK;
-    } catch (Throwable t) {
-      LOGGER.error("update transaction exception: {}", t.getMessage(), t);
-      return Status.ERROR;
     }
   }
 
+  /**
+   * Update a record when the update writes every field, by replacing the document without reading it first.
+   * The document is encoded once before the first attempt.
+   * @param key The record key of the record to write.
+   * @param values A HashMap of field/value pairs to update in the record.
+   */
+  private Status overwrite(final String key, final Map<String, ByteIterator> values) {
+    byte[] document = transcoder.encode(values).encoded();
+    long start = System.nanoTime();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        collection.replace(key, document, REPLACE_OPTIONS);
+        UPDATE_RETRY.complete(attempt, start);
+        return Status.OK;
+      } catch (DocumentNotFoundException e) {
+        UPDATE_RETRY.complete(attempt, start);
+        return Status.NOT_FOUND;
+      } catch (Throwable t) {
+        if (!UPDATE_RETRY.retry(t, attempt, start)) {
+          UPDATE_RETRY.complete(attempt, start);
+          ErrorCounters.record("UPDATE", t);
+          return Status.ERROR;
+        }
+      }
+    }
+  }
+
+  /**
+   * Update some fields of a record by reading the document, merging the fields, and replacing it with CAS.
+   * @param key The record key of the record to write.
+   * @param values A HashMap of field/value pairs to update in the record.
+   */
+  private Status replace(final String key, final Map<String, ByteIterator> values) {
+    long start = System.nanoTime();
+    for (int retry = 1; ; retry++) {
+      try {
+        for (int attempt = 1; ; attempt++) {
+          GetResult current = collection.get(key, GET_OPTIONS);
+          @SuppressWarnings("unchecked")
+          Map<String, ByteIterator> doc = current.contentAs(Map.class);
+          doc.putAll(values);
+          try {
+            collection.replace(key, doc, replaceOptions(current.cas()));
+            UPDATE_RETRY.complete(retry, start);
+            return Status.OK;
+          } catch (CasMismatchException e) {
+            if (attempt == MAX_REPLACE_ATTEMPTS) {
+              throw e;
+            }
+          }
+        }
+      } catch (DocumentNotFoundException e) {
+        UPDATE_RETRY.complete(retry, start);
+        return Status.NOT_FOUND;
+      } catch (Throwable t) {
+        if (!UPDATE_RETRY.retry(t, retry, start)) {
+          UPDATE_RETRY.complete(retry, start);
+          ErrorCounters.record("UPDATE", t);
+          return Status.ERROR;
+        }
+      }
+    }
+  }
+
+  /**
+   * Drop a record this client changed from the near cache.
+   * @param key The record key.
+   */
+  protected static void invalidate(String key) {
+    NearCache cache = nearCache;
+    if (cache != null) {
+      cache.invalidate(key);
+    }
+  }
+
+  protected static ReplaceOptions replaceOptions(long cas) {
+    return ReplaceOptions.replaceOptions()
+        .cas(cas)
+        .expiry(TTL)
+        .durability(durability)
+        .transcoder(transcoder);
+  }
+
   /**
    * Insert a record.
    * @param table The name of the table.
@@ -174,12 +888,34 @@ public class CouchbaseClientBinding extends DB {
    */
   @Override
   public Status insert(final String table, final String key, final Map<String, ByteIterator> values) {
-    try {
-      collection.upsert(key, values, UPSERT_OPTIONS);
-      return Status.OK;
-    } catch (Throwable t) {
-      LOGGER.error("update transaction exception: {}", t.getMessage(), t);
-      return Status.ERROR;
+    Shard target = select(key);
+    if (transactionBatch != null) {
+      return transactionBatch.insert(collection, key, values);
+    }
+    OperationEvent event = OperationEvent.begin(values);
+    long start = System.nanoTime();
+    Status status = batchLoader != null ? batchLoader.add(collection.reactive(), key, values) : upsert(key, values);
+    invalidate(key);
+    target.record(start);
+    OperationEvent.commit(event, "INSERT", key, status, start, null);
+    MetricsServer.record("INSERT", start, status);
+    return status;
+  }
+
+  private Status upsert(final String key, final Map<String, ByteIterator> values) {
+    long start = System.nanoTime();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        collection.upsert(key, values, UPSERT_OPTIONS);
+        INSERT_RETRY.complete(attempt, start);
+        return Status.OK;
+      } catch (Throwable t) {
+        if (!INSERT_RETRY.retry(t, attempt, start)) {
+          INSERT_RETRY.complete(attempt, start);
+          ErrorCounters.record("INSERT", t);
+          return Status.ERROR;
+        }
+      }
     }
   }
 
@@ -190,17 +926,47 @@ public class CouchbaseClientBinding extends DB {
    */
   @Override
   public Status delete(final String table, final String key) {
-    try {
-      collection.remove(key);
-      return Status.OK;
-    } catch (Throwable t) {
-      LOGGER.error("delete transaction exception: {}", t.getMessage(), t);
-      return Status.ERROR;
+    Shard target = select(key);
+    if (transactionBatch != null) {
+      return transactionBatch.delete(collection, key);
+    }
+    OperationEvent event = OperationEvent.begin(null);
+    long start = System.nanoTime();
+    Status status = remove(key);
+    invalidate(key);
+    target.record(start);
+    OperationEvent.commit(event, "DELETE", key, status, start, null);
+    MetricsServer.record("DELETE", start, status);
+    return status;
+  }
+
+  private Status remove(final String key) {
+    long start = System.nanoTime();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        collection.remove(key);
+        DELETE_RETRY.complete(attempt, start);
+        return Status.OK;
+      } catch (DocumentNotFoundException e) {
+        if (attempt == 1) {
+          ErrorCounters.record("DELETE", e);
+          return Status.ERROR;
+        }
+        // an earlier attempt that timed out removed the document
+        DELETE_RETRY.complete(attempt, start);
+        return Status.OK;
+      } catch (Throwable t) {
+        if (!DELETE_RETRY.retry(t, attempt, start)) {
+          DELETE_RETRY.complete(attempt, start);
+          ErrorCounters.record("DELETE", t);
+          return Status.ERROR;
+        }
+      }
     }
   }
 
   /**
-   * Query for specific rows of data using SQL++.
+   * Read a range of records, either with SQL++ or with a KV range scan depending on the scan mode.
    * @param table The name of the table.
    * @param startkey The record key of the first record to read.
    * @param recordcount The number of records to read.
@@ -210,27 +976,200 @@ public class CouchbaseClientBinding extends DB {
   @Override
   public Status scan(final String table, final String startkey, final int recordcount, final Set<String> fields,
                      final Vector<HashMap<String, ByteIterator>> result) {
-    try {
-      cluster.reactive().query(query, queryOptions()
-              .adhoc(false)
-              .readonly(true)
-              .metrics(false)
-              .parameters(JsonArray.from(startkey, recordcount)))
-          .flatMapMany(reactiveQueryResult -> reactiveQueryResult.rowsAs(String.class))
-          .flatMapSequential(docId -> collection.reactive().get(docId, GET_OPTIONS)
-              .map(getResult -> {
-                @SuppressWarnings("unchecked")
-                HashMap<String, ByteIterator> record = getResult.contentAs(HashMap.class);
-                return record;
-              })
-              .onErrorResume(DocumentNotFoundException.class, e -> Mono.empty()), min(256, recordcount))
-          .doOnNext(result::add)
-          .then()
-          .block();
-      return Status.OK;
-    } catch (Throwable t) {
-      LOGGER.error("scan transaction exception: {}", t.getMessage(), t);
-      return Status.ERROR;
+    Shard target = select(startkey);
+    OperationEvent event = OperationEvent.begin(null);
+    long start = System.nanoTime();
+    Status status = scanRecords(startkey, recordcount, fields, result);
+    target.record(start);
+    OperationEvent.commitScan(event, startkey, status, start, result);
+    MetricsServer.record("SCAN", start, status);
+    return status;
+  }
+
+  private Status scanRecords(final String startkey, final int recordcount, final Set<String> fields,
+                             final Vector<HashMap<String, ByteIterator>> result) {
+    long start = System.nanoTime();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Flux<HashMap<String, ByteIterator>> records = switch (scanMode) {
+          case RANGE -> everyCollection(index -> rangeScan(index, startkey, recordcount), recordcount)
+              .map(ScanRow::record);
+          case DOCUMENT -> everyCollection(index -> documentScan(index, startkey, recordcount, fields), recordcount)
+              .map(ScanRow::record);
+          default -> queryScan(startkey, recordcount, fields);
+        };
+        records
+            .map(record -> selectFields(record, fields))
+            .doOnNext(result::add)
+            .then()
+            .block();
+        SCAN_RETRY.complete(attempt, start);
+        return Status.OK;
+      } catch (Throwable t) {
+        if (!SCAN_RETRY.retry(t, attempt, start)) {
+          SCAN_RETRY.complete(attempt, start);
+          ErrorCounters.record("SCAN", t);
+          return Status.ERROR;
+        }
+        result.clear();
+      }
+    }
+  }
+
+  /**
+   * Run a scan on every collection of the table and keep the first {@code recordcount} rows in key order, so a table
+   * spread over many collections returns the same records as a single collection. With one collection its rows,
+   * which are already in key order, are returned as they arrive.
+   * @param scan Function that scans the collection with a {@link CollectionLayout} index.
+   * @param recordcount The number of records to read.
+   */
+  private static Flux<ScanRow> everyCollection(IntFunction<Flux<ScanRow>> scan, int recordcount) {
+    int count = layout.size();
+    if (count == 1) {
+      return scan.apply(0);
+    }
+    return Flux.range(0, count)
+        .flatMap(scan::apply, min(scanConcurrency, count))
+        .collect(() -> new PriorityQueue<ScanRow>(recordcount + 1, SCAN_ORDER.reversed()), (lowest, row) -> {
+          lowest.add(row);
+          if (lowest.size() > recordcount) {
+            lowest.poll();
+          }
+        })
+        .flatMapIterable(lowest -> {
+          List<ScanRow> rows = new ArrayList<>(lowest);
+          rows.sort(SCAN_ORDER);
+          return rows;
+        });
+  }
+
+  /**
+   * Get the IDs of the records with SQL++ and fetch each record with KV. With more than one collection the IDs of
+   * every collection are merged first, so only the records returned are fetched.
+   */
+  private Flux<HashMap<String, ByteIterator>> queryScan(final String startkey, final int recordcount,
+                                                        final Set<String> fields) {
+    String[] names = projection(fields);
+    List<LookupInSpec> specs = names != null ? lookupSpecs(names) : null;
+    QueryOptions options = scanQueryOptions(startkey, recordcount);
+    return everyCollection(index -> cluster.reactive().query(scanQueries[index], options)
+            .flatMapMany(reactiveQueryResult -> reactiveQueryResult.rowsAs(String.class))
+            .map(docId -> new ScanRow(docId, index, null)), recordcount)
+        .flatMapSequential(row -> fetchRecord(shard.collection(row.index()), row.id(), names, specs)
+            .onErrorResume(DocumentNotFoundException.class, e -> Mono.empty()), min(scanConcurrency, recordcount));
+  }
+
+  /**
+   * Return the records directly from SQL++ in a single round trip, decoding each row into a record map.
+   * Each row also carries the document ID, which is removed from the record.
+   */
+  private Flux<ScanRow> documentScan(final int index, final String startkey, final int recordcount,
+                                     final Set<String> fields) {
+    String statement = fields == null ? documentQueries[index] : documentQuery(layout.keyspace(index), fields);
+    return cluster.reactive().query(statement, scanQueryOptions(startkey, recordcount)
+            .serializer(MapRowSerializer.INSTANCE))
+        .flatMapMany(reactiveQueryResult -> reactiveQueryResult.rowsAs(HashMap.class))
+        .map(row -> {
+          @SuppressWarnings("unchecked")
+          HashMap<String, ByteIterator> record = (HashMap<String, ByteIterator>) row;
+          return new ScanRow(record.remove(SCAN_ID_COLUMN).toString(), index, record);
+        });
+  }
+
+  private static String documentQuery(String keyspace, Set<String> fields) {
+    StringBuilder statement = new StringBuilder("SELECT META(t).id AS `" + SCAN_ID_COLUMN + "`, ");
+    if (fields == null) {
+      statement.append("t.*");
+    } else {
+      StringJoiner projection = new StringJoiner(", ");
+      for (String field : fields) {
+        projection.add("t.`" + field + "`");
+      }
+      statement.append(projection);
+    }
+    return statement.append(" FROM ").append(keyspace)
+        .append(" AS t WHERE META(t).id >= $1 ORDER BY META(t).id LIMIT $2;").toString();
+  }
+
+  private static QueryOptions scanQueryOptions(final String startkey, final int recordcount) {
+    QueryOptions options = queryOptions()
+        .adhoc(false)
+        .readonly(true)
+        .metrics(false)
+        .scanConsistency(scanConsistency)
+        .parameters(JsonArray.from(startkey, recordcount));
+    if (maxParallelism > 0) {
+      options.maxParallelism(maxParallelism);
+    }
+    return options;
+  }
+
+  /**
+   * Stream the records with a KV range scan from the start key to the key {@code recordcount - 1} after it.
+   * Keys inserted in order with enough zero padding sort in key number order, which init() checks, so the range
+   * holds the same records as the SQL++ scan while the keys are contiguous. Range scan results are ordered within
+   * each vBucket but not across vBuckets, so the documents are sorted by key before they are decoded, and the
+   * requested fields are kept from each whole document.
+   */
+  private Flux<ScanRow> rangeScan(final int index, final String startkey, final int recordcount) {
+    ScanType range = ScanType.rangeScan(ScanTerm.inclusive(startkey),
+        ScanTerm.inclusive(rangeEnd(startkey, recordcount, keyDigits)));
+    return shard.collection(index).reactive().scan(range, SCAN_OPTIONS)
+        .collectSortedList(Comparator.comparing(ScanResult::id))
+        .flatMapIterable(results -> results)
+        .map(scanResult -> {
+          @SuppressWarnings("unchecked")
+          HashMap<String, ByteIterator> record = scanResult.contentAs(HashMap.class);
+          return new ScanRow(scanResult.id(), index, record);
+        });
+  }
+
+  /**
+   * Get the last key of a range scan, which is the start key with its zero padded key number advanced by
+   * {@code recordcount - 1}, or the last key with that many digits.
+   * @param startkey The record key of the first record to read.
+   * @param recordcount The number of records to read.
+   * @param digits The number of digits of every key number.
+   */
+  static String rangeEnd(String startkey, int recordcount, int digits) {
+    int split = startkey.length() - digits;
+    String number = Long.toString(Long.parseLong(startkey.substring(split)) + recordcount - 1);
+    if (number.length() > digits) {
+      return startkey.substring(0, split) + "9".repeat(digits);
+    }
+    return startkey.substring(0, split) + "0".repeat(digits - number.length()) + number;
+  }
+
+  protected static HashMap<String, ByteIterator> selectFields(HashMap<String, ByteIterator> record,
+                                                             Set<String> fields) {
+    if (fields != null) {
+      record.keySet().retainAll(fields);
+    }
+    return record;
+  }
+
+  /**
+   * Fetch a scan record, either as a full document or as a sub-document projection.
+   * @param target The collection that holds the record.
+   * @param docId The record key.
+   * @param names The fields to read or null for all of them.
+   * @param specs The lookup specs for the fields.
+   */
+  protected Mono<HashMap<String, ByteIterator>> fetchRecord(Collection target, String docId, String[] names,
+                                                            List<LookupInSpec> specs) {
+    if (names == null) {
+      return target.reactive().get(docId, GET_OPTIONS)
+          .map(getResult -> {
+            @SuppressWarnings("unchecked")
+            HashMap<String, ByteIterator> record = getResult.contentAs(HashMap.class);
+            return record;
+          });
     }
+    return target.reactive().lookupIn(docId, specs)
+        .map(lookup -> {
+          HashMap<String, ByteIterator> record = new HashMap<>(names.length);
+          addFields(lookup, names, record);
+          return record;
+        });
   }
 }
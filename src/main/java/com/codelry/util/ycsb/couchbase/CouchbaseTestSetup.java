@@ -1,6 +1,10 @@
 package com.codelry.util.ycsb.couchbase;
 
 import com.codelry.util.ycsb.TestSetup;
+import com.couchbase.client.core.error.CollectionExistsException;
+import com.couchbase.client.core.error.ScopeExistsException;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.manager.collection.CollectionManager;
 
 import java.util.List;
 import java.util.Properties;
@@ -18,10 +22,15 @@ import org.slf4j.LoggerFactory;
  */
 public class CouchbaseTestSetup extends TestSetup {
   static final Logger LOGGER = LoggerFactory.getLogger(CouchbaseTestSetup.class);
+  public static final String COUCHBASE_CREATE_INDEX = "couchbase.createIndex";
 
   @Override
   public void testSetup(Properties properties) {
     String indexName = "idx_meta_id";
+    ScanMode scanMode = ScanMode.valueOf(
+        properties.getProperty(CouchbaseClientBinding.COUCHBASE_SCAN_MODE, "query").toUpperCase());
+    boolean createIndex = Boolean.parseBoolean(
+        properties.getProperty(COUCHBASE_CREATE_INDEX, String.valueOf(scanMode != ScanMode.RANGE)));
 
     CouchbaseConnect db = CouchbaseConnect.getInstance();
     CouchbaseConfig config = new CouchbaseConfig().fromProperties(properties);
@@ -34,11 +43,54 @@ public class CouchbaseTestSetup extends TestSetup {
       retryVoid(db::createScope);
       LOGGER.info("Creating collection {}", db.getCollectionName());
       retryVoid(db::createCollection);
-      LOGGER.info("Creating index {} on {}", indexName, db.getCollectionName());
-      retryVoid(() -> db.createSecondaryIndex(indexName, List.of("META().id")));
+      if (createIndex) {
+        LOGGER.info("Creating index {} on {}", indexName, db.getCollectionName());
+        retryVoid(() -> db.createSecondaryIndex(indexName, List.of("META().id")));
+      }
+      CollectionLayout layout = CollectionLayout.fromProperties(properties);
+      if (layout.size() > 1) {
+        createCollections(db.getCluster(), db.getBucketName(), layout, createIndex ? indexName : null);
+      }
       db.disconnect();
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Create the scopes and collections the table is spread over, and optionally the key index on each of them.
+   * Scopes and collections that already exist are kept.
+   */
+  private static void createCollections(Cluster cluster, String bucketName, CollectionLayout layout, String indexName)
+      throws Exception {
+    CollectionManager manager = cluster.bucket(bucketName).collections();
+    LOGGER.info("Creating {} collections", layout.size());
+    for (int i = 0; i < layout.size(); i++) {
+      String scope = layout.scope(i);
+      String collection = layout.collection(i);
+      if (i == 0 || !scope.equals(layout.scope(i - 1))) {
+        retryVoid(() -> {
+          try {
+            manager.createScope(scope);
+          } catch (ScopeExistsException e) {
+            LOGGER.debug("Scope {} exists", scope);
+          }
+        });
+      }
+      retryVoid(() -> {
+        try {
+          manager.createCollection(scope, collection);
+        } catch (CollectionExistsException e) {
+          LOGGER.debug("Collection {}.{} exists", scope, collection);
+        }
+      });
+    }
+    if (indexName != null) {
+      for (int i = 0; i < layout.size(); i++) {
+        String statement = "CREATE INDEX " + indexName + " IF NOT EXISTS ON " + layout.keyspace(i) + "(META().id)";
+        LOGGER.info("Creating index {} on {}", indexName, layout.keyspace(i));
+        retryVoid(() -> cluster.query(statement));
+      }
+    }
+  }
 }
@@ -0,0 +1,62 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable copy of a document that can be handed to any number of readers.
+ * The field values are kept as byte arrays, and each reader gets its own iterators over them.
+ */
+public final class DocumentSnapshot {
+  private static final int DOCUMENT_OVERHEAD = 128;
+  private static final int FIELD_OVERHEAD = 80;
+  private final String[] names;
+  private final byte[][] values;
+  private final int size;
+
+  private DocumentSnapshot(String[] names, byte[][] values, int size) {
+    this.names = names;
+    this.values = values;
+    this.size = size;
+  }
+
+  /**
+   * Copy a document.
+   * @param document The document, whose iterators are consumed.
+   */
+  public static DocumentSnapshot of(Map<String, ByteIterator> document) {
+    String[] names = new String[document.size()];
+    byte[][] values = new byte[names.length][];
+    int size = DOCUMENT_OVERHEAD;
+    int i = 0;
+    for (Map.Entry<String, ByteIterator> field : document.entrySet()) {
+      names[i] = field.getKey();
+      values[i] = field.getValue().toArray();
+      size += FIELD_OVERHEAD + names[i].length() + values[i].length;
+      i++;
+    }
+    return new DocumentSnapshot(names, values, size);
+  }
+
+  /**
+   * The approximate heap used by the snapshot in bytes.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Add iterators over the requested fields to a result.
+   * @param fields The fields to copy or null for all of them.
+   * @param result The map to add the fields to.
+   */
+  public void copyTo(Set<String> fields, Map<String, ByteIterator> result) {
+    for (int i = 0; i < names.length; i++) {
+      if (fields == null || fields.contains(names[i])) {
+        result.put(names[i], new ByteSliceIterator(values[i], 0, values[i].length));
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.Status;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates operation failures by operation and exception type.
+ * Failures are counted with lock-free counters and reported as return codes of an {@code ERRORS-<OP>} measurement.
+ * Only one stack trace per operation and exception type is logged per interval, so a failover does not turn into a
+ * logging storm that distorts the latencies being measured.
+ */
+public final class ErrorCounters {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ErrorCounters.class);
+  public static final String COUCHBASE_ERROR_LOG_INTERVAL = "couchbase.errorLogIntervalMs";
+  public static final String ERRORS_PREFIX = "ERRORS-";
+  private static final Map<String, Map<Class<?>, Counter>> counters = new ConcurrentHashMap<>();
+  private static volatile long intervalNanos = TimeUnit.SECONDS.toNanos(10);
+
+  private static final class Counter {
+    private final String measurement;
+    private final Status status;
+    private final LongAdder count = new LongAdder();
+    private final AtomicLong lastLogged = new AtomicLong(System.nanoTime() - Long.MAX_VALUE / 2);
+
+    private Counter(String operation, Class<?> type) {
+      this.measurement = ERRORS_PREFIX + operation;
+      this.status = new Status(type.getSimpleName(), type.getName());
+    }
+  }
+
+  public static void configure(long intervalMs) {
+    intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+  }
+
+  /**
+   * Count a failed operation and log its stack trace if none was logged for this type during the interval.
+   * @param operation The operation name.
+   * @param error The failure.
+   */
+  public static void record(String operation, Throwable error) {
+    Map<Class<?>, Counter> types = counters.get(operation);
+    if (types == null) {
+      types = counters.computeIfAbsent(operation, k -> new ConcurrentHashMap<>());
+    }
+    Counter counter = types.get(error.getClass());
+    if (counter == null) {
+      counter = types.computeIfAbsent(error.getClass(), type -> new Counter(operation, type));
+    }
+    counter.count.increment();
+    OperationMetrics.status(counter.measurement, counter.status);
+    long now = System.nanoTime();
+    long last = counter.lastLogged.get();
+    if (now - last >= intervalNanos && counter.lastLogged.compareAndSet(last, now)) {
+      LOGGER.error("{} exception ({} so far): {}", operation.toLowerCase(), counter.count.sum(), error.getMessage(),
+          error);
+    }
+  }
+
+  /**
+   * Log the total number of failures for each operation and exception type.
+   */
+  public static void logSummary() {
+    counters.forEach((operation, types) -> types.forEach((type, counter) ->
+        LOGGER.info("{} {} errors: {}", operation.toLowerCase(), type.getSimpleName(), counter.count.sum())));
+  }
+
+  private ErrorCounters() {
+    super();
+  }
+}
@@ -0,0 +1,94 @@
+package com.codelry.util.ycsb.couchbase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The delay after which a hedged read also asks a replica.
+ * The delay is either fixed, or a percentile of the recent active read latencies. Latencies are counted in a
+ * log-linear histogram with about 3% precision, and the percentile is recomputed from the samples of each interval,
+ * so the delay follows the cluster as it degrades and recovers without any work on the read path beyond an
+ * atomic increment.
+ */
+public final class HedgeDelay {
+  private static final int LINEAR_BUCKETS = 64;
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int BUCKETS = LINEAR_BUCKETS + (63 - 6) * SUB_BUCKETS;
+  private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long MIN_SAMPLES = 100;
+  private final double percentile;
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong samples = new AtomicLong();
+  private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+  private volatile long delayNanos;
+
+  /**
+   * @param fixedMicros The delay in microseconds, also used as the live delay until enough samples are recorded.
+   * @param percentile The latency percentile to use as the delay, or 0 to always use the fixed delay.
+   */
+  public HedgeDelay(long fixedMicros, double percentile) {
+    this.delayNanos = TimeUnit.MICROSECONDS.toNanos(fixedMicros);
+    this.percentile = percentile;
+  }
+
+  public long delayNanos() {
+    return delayNanos;
+  }
+
+  /**
+   * Record the latency of an active read.
+   * @param nanos The latency in nanoseconds.
+   */
+  public void record(long nanos) {
+    if (percentile <= 0) {
+      return;
+    }
+    counts.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+    samples.incrementAndGet();
+    long now = System.nanoTime();
+    long start = intervalStart.get();
+    if (now - start >= INTERVAL_NANOS && intervalStart.compareAndSet(start, now)) {
+      update();
+    }
+  }
+
+  private void update() {
+    long total = samples.getAndSet(0);
+    long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.getAndSet(i, 0);
+    }
+    if (total < MIN_SAMPLES) {
+      return;
+    }
+    long rank = (long) Math.ceil(total * percentile / 100.0);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        delayNanos = TimeUnit.MICROSECONDS.toNanos(upperBound(i));
+        return;
+      }
+    }
+  }
+
+  static int bucket(long micros) {
+    if (micros < LINEAR_BUCKETS) {
+      return (int) Math.max(micros, 0);
+    }
+    int power = 63 - Long.numberOfLeadingZeros(micros);
+    int sub = (int) (micros >>> (power - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_BUCKETS + (power - 6) * SUB_BUCKETS + sub;
+  }
+
+  static long upperBound(int bucket) {
+    if (bucket < LINEAR_BUCKETS) {
+      return bucket + 1;
+    }
+    int power = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 6;
+    long sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+    return (1L << power) + ((sub + 1) << (power - SUB_BUCKET_BITS));
+  }
+}
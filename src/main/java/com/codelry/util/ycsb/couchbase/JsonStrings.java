@@ -0,0 +1,74 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes field values as JSON strings once, so a sub-document mutation can send the bytes without converting the
+ * value to a String and serializing it again for every attempt.
+ * Bytes other than quotes, backslashes and control characters are copied as they are, so values are expected to be
+ * UTF-8, as they are for the JSON codecs.
+ */
+public final class JsonStrings {
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[1024]);
+
+  /**
+   * Encode the remaining bytes of a value as a quoted JSON string.
+   * The value is read into a buffer each thread reuses, so the returned array, which the mutation holds until it
+   * completes, is the only allocation.
+   * @param value The field value, which is consumed.
+   */
+  public static byte[] encode(ByteIterator value) {
+    int size = (int) value.bytesLeft();
+    byte[] raw = SCRATCH.get();
+    if (raw.length < size) {
+      raw = new byte[Math.max(size, raw.length * 2)];
+      SCRATCH.set(raw);
+    }
+    int length = 0;
+    while (value.hasNext() && length < size) {
+      length = value.nextBuf(raw, length);
+    }
+    int extra = 0;
+    for (int i = 0; i < length; i++) {
+      byte b = raw[i];
+      if (b == '"' || b == '\\') {
+        extra += 1;
+      } else if (b >= 0 && b < 0x20) {
+        extra += 5;
+      }
+    }
+    byte[] encoded = new byte[length + extra + 2];
+    int position = 0;
+    encoded[position++] = '"';
+    if (extra == 0) {
+      System.arraycopy(raw, 0, encoded, 1, length);
+      position += length;
+    } else {
+      for (int i = 0; i < length; i++) {
+        byte b = raw[i];
+        if (b == '"' || b == '\\') {
+          encoded[position++] = '\\';
+          encoded[position++] = b;
+        } else if (b >= 0 && b < 0x20) {
+          encoded[position++] = '\\';
+          encoded[position++] = 'u';
+          encoded[position++] = '0';
+          encoded[position++] = '0';
+          encoded[position++] = HEX[b >> 4];
+          encoded[position++] = HEX[b & 0xf];
+        } else {
+          encoded[position++] = b;
+        }
+      }
+    }
+    encoded[position] = '"';
+    return encoded;
+  }
+
+  private JsonStrings() {
+    super();
+  }
+}
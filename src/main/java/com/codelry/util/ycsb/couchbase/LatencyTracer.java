@@ -0,0 +1,102 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.couchbase.client.core.cnc.RequestSpan;
+import com.couchbase.client.core.cnc.RequestTracer;
+import com.couchbase.client.core.cnc.TracingIdentifiers;
+import com.couchbase.client.core.msg.RequestContext;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request tracer that decomposes SDK request latency into measurements.
+ * For every operation type it records the request encoding time, the dispatch to response time, and the
+ * server reported duration as {@code TRACE-<OP>-ENCODE}, {@code TRACE-<OP>-DISPATCH} and {@code TRACE-<OP>-SERVER}.
+ * The measurements are reported next to the standard YCSB measurements at each status interval and at the end of the run.
+ */
+public class LatencyTracer implements RequestTracer {
+
+  public static final String TRACE_PREFIX = "TRACE-";
+
+  @Override
+  public RequestSpan requestSpan(String name, RequestSpan parent) {
+    String operation = parent instanceof LatencySpan ? ((LatencySpan) parent).operation : operationName(name);
+    return new LatencySpan(name, operation);
+  }
+
+  @Override
+  public Mono<Void> start() {
+    return Mono.empty();
+  }
+
+  @Override
+  public Mono<Void> stop(Duration timeout) {
+    return Mono.empty();
+  }
+
+  private static String operationName(String name) {
+    return name.toUpperCase(Locale.ROOT).replace('_', '-');
+  }
+
+  /**
+   * Span that records its own duration when it ends.
+   */
+  static final class LatencySpan implements RequestSpan {
+    private final String name;
+    private final String operation;
+    private final long start = System.nanoTime();
+    private volatile long serverDuration = -1;
+
+    LatencySpan(String name, String operation) {
+      this.name = name;
+      this.operation = operation;
+    }
+
+    @Override
+    public void attribute(String key, String value) {
+    }
+
+    @Override
+    public void attribute(String key, boolean value) {
+    }
+
+    @Override
+    public void attribute(String key, long value) {
+      if (TracingIdentifiers.ATTR_SERVER_DURATION.equals(key)) {
+        serverDuration = value;
+      }
+    }
+
+    @Override
+    public void event(String name, Instant timestamp) {
+    }
+
+    @Override
+    public void status(StatusCode status) {
+    }
+
+    @Override
+    public void recordException(Throwable err) {
+    }
+
+    @Override
+    public void requestContext(RequestContext requestContext) {
+    }
+
+    @Override
+    public void end() {
+      long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+      if (TracingIdentifiers.SPAN_REQUEST_ENCODING.equals(name)) {
+        OperationMetrics.measureMicros(TRACE_PREFIX + operation + "-ENCODE", micros);
+      } else if (TracingIdentifiers.SPAN_DISPATCH.equals(name)) {
+        OperationMetrics.measureMicros(TRACE_PREFIX + operation + "-DISPATCH", micros);
+        if (serverDuration >= 0) {
+          OperationMetrics.measureMicros(TRACE_PREFIX + operation + "-SERVER", serverDuration);
+        }
+      }
+    }
+  }
+}
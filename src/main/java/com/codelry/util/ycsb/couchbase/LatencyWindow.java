@@ -0,0 +1,89 @@
+package com.codelry.util.ycsb.couchbase;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operation counts and latency percentiles over consecutive windows.
+ * Latencies are counted in the same log-linear histogram as {@link HedgeDelay}. When a window ends, its p50, p90,
+ * p99 and p99.9 latencies are computed and the histogram starts over, while the operation, error and latency totals
+ * keep counting.
+ */
+public final class LatencyWindow {
+  public static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+  private final LongAdder count = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+  private final AtomicLongArray window = new AtomicLongArray(HedgeDelay.BUCKETS);
+  private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+  private volatile long[] quantiles = new long[0];
+
+  /**
+   * Record an operation and end the window if it has run for at least the window length.
+   * @param micros The operation latency in microseconds.
+   * @param ok Whether the operation succeeded.
+   * @param windowNanos The window length.
+   */
+  public void record(long micros, boolean ok, long windowNanos) {
+    count.increment();
+    totalMicros.add(micros);
+    if (!ok) {
+      errors.increment();
+    }
+    window.incrementAndGet(HedgeDelay.bucket(micros));
+    rotate(windowNanos);
+  }
+
+  /**
+   * Compute the percentiles of the window once it has ended and start a new one.
+   * @param windowNanos The window length, or 0 to end the window now.
+   */
+  public void rotate(long windowNanos) {
+    long now = System.nanoTime();
+    long start = windowStart.get();
+    if (now - start < windowNanos || !windowStart.compareAndSet(start, now)) {
+      return;
+    }
+    long[] snapshot = new long[HedgeDelay.BUCKETS];
+    long total = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = window.getAndSet(i, 0);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      quantiles = new long[0];
+      return;
+    }
+    long[] values = new long[QUANTILES.length];
+    int q = 0;
+    long seen = 0;
+    for (int i = 0; i < snapshot.length && q < values.length; i++) {
+      seen += snapshot[i];
+      while (q < values.length && seen >= (long) Math.ceil(total * QUANTILES[q])) {
+        values[q++] = HedgeDelay.upperBound(i);
+      }
+    }
+    quantiles = values;
+  }
+
+  /**
+   * The latencies in microseconds at each of the {@link #QUANTILES} in the last completed window, or an empty array
+   * if it had no operations.
+   */
+  public long[] quantiles() {
+    return quantiles;
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public long errors() {
+    return errors.sum();
+  }
+
+  public long totalMicros() {
+    return totalMicros.sum();
+  }
+}
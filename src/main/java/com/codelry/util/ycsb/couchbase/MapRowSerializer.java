@@ -0,0 +1,39 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.couchbase.client.core.error.DecodingFailureException;
+import com.couchbase.client.java.codec.DefaultJsonSerializer;
+import com.couchbase.client.java.codec.JsonSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Query row serializer that decodes rows straight into YCSB record maps with the streaming codec.
+ */
+public class MapRowSerializer implements JsonSerializer {
+
+  private static final JsonSerializer defaultSerializer = DefaultJsonSerializer.create();
+  public static final MapRowSerializer INSTANCE = new MapRowSerializer();
+
+  private MapRowSerializer() {
+    super();
+  }
+
+  @Override
+  public byte[] serialize(final Object input) {
+    return defaultSerializer.serialize(input);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T deserialize(final Class<T> target, final byte[] input) {
+    if (target.equals(Map.class) || target.equals(HashMap.class)) {
+      try {
+        return (T) StreamingMapTranscoder.decodeMap(input);
+      } catch (Throwable e) {
+        throw new DecodingFailureException(e);
+      }
+    }
+    return defaultSerializer.deserialize(target, input);
+  }
+}
@@ -0,0 +1,94 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.DB;
+import com.codelry.util.ycsb.DBException;
+import com.codelry.util.ycsb.Status;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * Wraps a binding for the drivers in this project that run a workload without the YCSB client, and records the
+ * latency and return code of each operation under the standard YCSB operation names.
+ * Failed operations are recorded under the operation name with a {@code -FAILED} suffix, as the YCSB client does.
+ * The status of the last operation is kept for drivers that need the outcome, which workloads don't return.
+ */
+public class MeasuredDB extends DB {
+  private final DB db;
+  private Status last;
+
+  public MeasuredDB(DB db) {
+    this.db = db;
+  }
+
+  @Override
+  public void setProperties(Properties p) {
+    super.setProperties(p);
+    db.setProperties(p);
+  }
+
+  @Override
+  public void init() throws DBException {
+    db.init();
+  }
+
+  @Override
+  public void cleanup() throws DBException {
+    long start = System.nanoTime();
+    db.cleanup();
+    OperationMetrics.measure("CLEANUP", start);
+  }
+
+  @Override
+  public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
+    long start = System.nanoTime();
+    return record("READ", db.read(table, key, fields, result), start);
+  }
+
+  @Override
+  public Status scan(String table, String startkey, int recordcount, Set<String> fields,
+                     Vector<HashMap<String, ByteIterator>> result) {
+    long start = System.nanoTime();
+    return record("SCAN", db.scan(table, startkey, recordcount, fields, result), start);
+  }
+
+  @Override
+  public Status update(String table, String key, Map<String, ByteIterator> values) {
+    long start = System.nanoTime();
+    return record("UPDATE", db.update(table, key, values), start);
+  }
+
+  @Override
+  public Status insert(String table, String key, Map<String, ByteIterator> values) {
+    long start = System.nanoTime();
+    return record("INSERT", db.insert(table, key, values), start);
+  }
+
+  @Override
+  public Status delete(String table, String key) {
+    long start = System.nanoTime();
+    return record("DELETE", db.delete(table, key), start);
+  }
+
+  /**
+   * Get the status of the last operation and clear it.
+   * @return The status, or null if no operation ran since the last call.
+   */
+  public Status takeStatus() {
+    Status status = last;
+    last = null;
+    return status;
+  }
+
+  private Status record(String operation, Status status, long start) {
+    last = status;
+    String measurement = status.isOk() ? operation : operation + "-FAILED";
+    OperationMetrics.measure(measurement, start);
+    OperationMetrics.status(measurement, status);
+    return status;
+  }
+}
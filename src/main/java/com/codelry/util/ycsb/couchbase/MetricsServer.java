@@ -0,0 +1,263 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.Status;
+import com.couchbase.client.core.diagnostics.EndpointDiagnostics;
+import com.couchbase.client.core.service.ServiceType;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves live metrics in the Prometheus text format while a run is in progress.
+ * The {@code /metrics} endpoint reports the counters and value recorders of the SDK meter, the state of the SDK
+ * endpoints to each node, the operation counts, error counts and latency percentiles of the binding, and JVM heap,
+ * GC and allocation statistics. Binding latency percentiles are computed over the most recent completed
+ * {@link LatencyWindow}, and counts and sums are totals since the start of the run.
+ */
+public class MetricsServer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetricsServer.class);
+  public static final String COUCHBASE_METRICS_PORT = "couchbase.metricsPort";
+  public static final String COUCHBASE_METRICS_ADDRESS = "couchbase.metricsAddress";
+  public static final String COUCHBASE_METRICS_WINDOW = "couchbase.metricsWindowSec";
+  private static volatile MetricsServer active;
+  private final HttpServer server;
+  private final SdkMeter meter;
+  private final Shard[] shards;
+  private final long windowNanos;
+  private final Map<String, LatencyWindow> operations = new ConcurrentHashMap<>();
+
+  private MetricsServer(HttpServer server, SdkMeter meter, Shard[] shards, long windowNanos) {
+    this.server = server;
+    this.meter = meter;
+    this.shards = shards;
+    this.windowNanos = windowNanos;
+  }
+
+  /**
+   * Start the endpoint if {@code couchbase.metricsPort} is set.
+   * @param properties The binding properties.
+   * @param meter The meter installed in the SDK environments, or null.
+   * @param shards The connections to report endpoint states for.
+   * @return The running server, or null if it is not enabled.
+   */
+  public static MetricsServer start(Properties properties, SdkMeter meter, Shard[] shards) throws IOException {
+    int port = Integer.parseInt(properties.getProperty(COUCHBASE_METRICS_PORT, "0"));
+    if (port <= 0) {
+      return null;
+    }
+    String address = properties.getProperty(COUCHBASE_METRICS_ADDRESS, "127.0.0.1");
+    long windowSeconds = Long.parseLong(properties.getProperty(COUCHBASE_METRICS_WINDOW, "10"));
+    HttpServer server = HttpServer.create(new InetSocketAddress(address, port), 0);
+    MetricsServer metrics = new MetricsServer(server, meter, shards, TimeUnit.SECONDS.toNanos(windowSeconds));
+    server.createContext("/metrics", metrics::handle);
+    server.start();
+    active = metrics;
+    LOGGER.info("Serving metrics on http://{}:{}/metrics", address, port);
+    return metrics;
+  }
+
+  public void stop() {
+    if (active == this) {
+      active = null;
+    }
+    server.stop(0);
+  }
+
+  /**
+   * Record a binding operation if the endpoint is running.
+   * @param operation The operation name.
+   * @param startNanos The time the operation started.
+   * @param status The operation result.
+   */
+  public static void record(String operation, long startNanos, Status status) {
+    MetricsServer metrics = active;
+    if (metrics == null) {
+      return;
+    }
+    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    metrics.operations.computeIfAbsent(operation, key -> new LatencyWindow())
+        .record(micros, status.isOk(), metrics.windowNanos);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    byte[] body;
+    int code = 200;
+    try {
+      body = scrape().getBytes(StandardCharsets.UTF_8);
+    } catch (RuntimeException e) {
+      LOGGER.error("Metrics scrape failed: {}", e.getMessage(), e);
+      body = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+      code = 500;
+    }
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+    exchange.sendResponseHeaders(code, body.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(body);
+    }
+  }
+
+  /**
+   * Render all metrics in the Prometheus text format.
+   */
+  String scrape() {
+    StringBuilder out = new StringBuilder(8192);
+    bindingMetrics(out);
+    if (meter != null) {
+      sdkMetrics(out);
+    }
+    endpointMetrics(out);
+    jvmMetrics(out);
+    return out.toString();
+  }
+
+  private void bindingMetrics(StringBuilder out) {
+    Map<String, LatencyWindow> sorted = new TreeMap<>(operations);
+    type(out, "ycsb_operation_latency_microseconds", "summary");
+    for (Map.Entry<String, LatencyWindow> e : sorted.entrySet()) {
+      LatencyWindow stats = e.getValue();
+      stats.rotate(windowNanos);
+      long[] values = stats.quantiles();
+      for (int i = 0; i < LatencyWindow.QUANTILES.length; i++) {
+        out.append("ycsb_operation_latency_microseconds{operation=\"").append(escape(e.getKey()))
+            .append("\",quantile=\"").append(LatencyWindow.QUANTILES[i]).append("\"} ")
+            .append(i < values.length ? String.valueOf(values[i]) : "NaN").append('\n');
+      }
+      sample(out, "ycsb_operation_latency_microseconds_sum", "operation", e.getKey(), stats.totalMicros());
+      sample(out, "ycsb_operation_latency_microseconds_count", "operation", e.getKey(), stats.count());
+    }
+    type(out, "ycsb_operation_errors_total", "counter");
+    for (Map.Entry<String, LatencyWindow> e : sorted.entrySet()) {
+      sample(out, "ycsb_operation_errors_total", "operation", e.getKey(), e.getValue().errors());
+    }
+    type(out, "ycsb_async_in_flight", "gauge");
+    out.append("ycsb_async_in_flight ").append(CouchbaseAsyncBinding.inFlight()).append('\n');
+  }
+
+  private void sdkMetrics(StringBuilder out) {
+    String family = null;
+    for (SdkMeter.Series series : sortedByName(meter.counters())) {
+      String name = "couchbase_sdk_" + sanitize(series.name()) + "_total";
+      if (!name.equals(family)) {
+        type(out, name, "counter");
+        family = name;
+      }
+      out.append(name).append(labels(series.tags())).append(' ').append(series.total()).append('\n');
+    }
+    for (SdkMeter.Series series : sortedByName(meter.recorders())) {
+      String name = "couchbase_sdk_" + sanitize(series.name());
+      if (!name.equals(family)) {
+        type(out, name, "summary");
+        family = name;
+      }
+      String labels = labels(series.tags());
+      out.append(name).append("_sum").append(labels).append(' ').append(series.total()).append('\n');
+      out.append(name).append("_count").append(labels).append(' ').append(series.count()).append('\n');
+    }
+  }
+
+  private static List<SdkMeter.Series> sortedByName(List<SdkMeter.Series> series) {
+    series.sort(Comparator.comparing(SdkMeter.Series::name));
+    return series;
+  }
+
+  private void endpointMetrics(StringBuilder out) {
+    type(out, "couchbase_sdk_endpoints", "gauge");
+    for (Shard shard : shards) {
+      Map<String, Integer> states = new TreeMap<>();
+      for (Map.Entry<ServiceType, List<EndpointDiagnostics>> e : shard.cluster().diagnostics().endpoints().entrySet()) {
+        for (EndpointDiagnostics endpoint : e.getValue()) {
+          String labels = "{shard=\"" + shard.index()
+              + "\",service=\"" + e.getKey().name().toLowerCase(Locale.ROOT)
+              + "\",remote=\"" + escape(String.valueOf(endpoint.remote()))
+              + "\",state=\"" + endpoint.state().name().toLowerCase(Locale.ROOT) + "\"}";
+          states.merge(labels, 1, Integer::sum);
+        }
+      }
+      for (Map.Entry<String, Integer> e : states.entrySet()) {
+        out.append("couchbase_sdk_endpoints").append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+      }
+    }
+  }
+
+  private static void jvmMetrics(StringBuilder out) {
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    type(out, "jvm_memory_heap_used_bytes", "gauge");
+    out.append("jvm_memory_heap_used_bytes ").append(heap.getUsed()).append('\n');
+    type(out, "jvm_memory_heap_committed_bytes", "gauge");
+    out.append("jvm_memory_heap_committed_bytes ").append(heap.getCommitted()).append('\n');
+
+    List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    type(out, "jvm_gc_collections_total", "counter");
+    for (GarbageCollectorMXBean gc : collectors) {
+      sample(out, "jvm_gc_collections_total", "gc", gc.getName(), gc.getCollectionCount());
+    }
+    type(out, "jvm_gc_collection_seconds_total", "counter");
+    for (GarbageCollectorMXBean gc : collectors) {
+      out.append("jvm_gc_collection_seconds_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+          .append(gc.getCollectionTime() / 1000.0).append('\n');
+    }
+
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean allocations
+        && allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+      long allocated = 0;
+      for (long bytes : allocations.getThreadAllocatedBytes(allocations.getAllThreadIds())) {
+        if (bytes > 0) {
+          allocated += bytes;
+        }
+      }
+      type(out, "jvm_threads_allocated_bytes", "gauge");
+      out.append("jvm_threads_allocated_bytes ").append(allocated).append('\n');
+    }
+  }
+
+  private static void type(StringBuilder out, String name, String type) {
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String label, String value, long sample) {
+    out.append(name).append('{').append(label).append("=\"").append(escape(value)).append("\"} ")
+        .append(sample).append('\n');
+  }
+
+  private static String labels(Map<String, String> tags) {
+    if (tags.isEmpty()) {
+      return "";
+    }
+    StringBuilder labels = new StringBuilder("{");
+    for (Map.Entry<String, String> e : tags.entrySet()) {
+      if (labels.length() > 1) {
+        labels.append(',');
+      }
+      labels.append(sanitize(e.getKey())).append("=\"").append(escape(e.getValue())).append('"');
+    }
+    return labels.append('}').toString();
+  }
+
+  static String sanitize(String name) {
+    return name.replaceAll("[^a-zA-Z0-9_]", "_");
+  }
+
+  static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,168 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.Status;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded client side cache of documents in front of the KV reads of the binding.
+ * The cache is split into stripes, each an access ordered LinkedHashMap with its own lock that evicts its least
+ * recently used entry when it is full. Entries expire after a fixed TTL. Documents are stored as snapshots so the
+ * iterators returned to YCSB are independent of the cached copy.
+ * Each stripe counts its invalidations. A reader takes the count before it loads a document and the document is only
+ * cached if the count is unchanged, so a read in flight when this client changes the key can't cache the old copy.
+ * Lookups are reported as {@code HIT}, {@code MISS}, {@code EXPIRED}, and {@code EVICTED} return codes of the
+ * {@code NEARCACHE} measurement, and the approximate memory used is sampled in the {@code NEARCACHE-KB} measurement.
+ */
+public class NearCache {
+  public static final String COUCHBASE_NEAR_CACHE_SIZE = "couchbase.nearCacheSize";
+  public static final String COUCHBASE_NEAR_CACHE_TTL = "couchbase.nearCacheTtlMs";
+  public static final String COUCHBASE_NEAR_CACHE_STRIPES = "couchbase.nearCacheStripes";
+  public static final String MEASUREMENT = "NEARCACHE";
+  public static final String MEMORY_MEASUREMENT = "NEARCACHE-KB";
+  private static final Status HIT = new Status("HIT", "Read served from the near cache");
+  private static final Status MISS = new Status("MISS", "Read not in the near cache");
+  private static final Status EXPIRED = new Status("EXPIRED", "Near cache entry expired");
+  private static final Status EVICTED = new Status("EVICTED", "Near cache entry evicted");
+  private static final int ENTRY_OVERHEAD = 64;
+  private static final int SAMPLE_MASK = 1023;
+  private final Segment[] segments;
+  private final int mask;
+  private final long ttlNanos;
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicLong puts = new AtomicLong();
+
+  private record Entry(DocumentSnapshot document, long expires, int size) {}
+
+  private final class Segment extends LinkedHashMap<String, Entry> {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int capacity;
+    private volatile long version;
+
+    private Segment(int capacity) {
+      super(Math.max(16, capacity * 4 / 3), 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      if (size() > capacity) {
+        bytes.addAndGet(-eldest.getValue().size());
+        OperationMetrics.status(MEASUREMENT, EVICTED);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * @param maxEntries The maximum number of documents cached.
+   * @param ttlMs The time a document is cached for.
+   * @param stripes The number of independently locked stripes, rounded up to a power of two.
+   */
+  public NearCache(int maxEntries, long ttlMs, int stripes) {
+    int count = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+    this.segments = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      segments[i] = new Segment(Math.max(1, maxEntries / count));
+    }
+    this.mask = count - 1;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+  }
+
+  private Segment segment(String key) {
+    int hash = key.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & mask];
+  }
+
+  /**
+   * Copy a cached document into the result.
+   * @param key The record key.
+   * @param fields The fields to copy or null for all of them.
+   * @param result The map to add the fields to.
+   * @return true if the document was cached.
+   */
+  public boolean get(String key, Set<String> fields, Map<String, ByteIterator> result) {
+    Segment segment = segment(key);
+    Entry entry;
+    segment.lock.lock();
+    try {
+      entry = segment.get(key);
+      if (entry != null && System.nanoTime() - entry.expires() >= 0) {
+        segment.remove(key);
+        bytes.addAndGet(-entry.size());
+        OperationMetrics.status(MEASUREMENT, EXPIRED);
+        entry = null;
+      }
+    } finally {
+      segment.lock.unlock();
+    }
+    if (entry == null) {
+      OperationMetrics.status(MEASUREMENT, MISS);
+      return false;
+    }
+    OperationMetrics.status(MEASUREMENT, HIT);
+    entry.document().copyTo(fields, result);
+    return true;
+  }
+
+  /**
+   * Get the invalidation count of the stripe a key belongs to, to pass to {@link #put} once the document is loaded.
+   * @param key The record key.
+   */
+  public long version(String key) {
+    return segment(key).version;
+  }
+
+  /**
+   * Cache a document read from the cluster, unless a key of its stripe was invalidated while it was loaded.
+   * @param key The record key.
+   * @param document The document.
+   * @param version The stripe invalidation count taken before the document was loaded.
+   */
+  public void put(String key, DocumentSnapshot document, long version) {
+    int size = ENTRY_OVERHEAD + key.length() + document.size();
+    Entry entry = new Entry(document, System.nanoTime() + ttlNanos, size);
+    Segment segment = segment(key);
+    segment.lock.lock();
+    try {
+      if (segment.version != version) {
+        return;
+      }
+      Entry previous = segment.put(key, entry);
+      bytes.addAndGet(previous == null ? size : size - previous.size());
+    } finally {
+      segment.lock.unlock();
+    }
+    if ((puts.incrementAndGet() & SAMPLE_MASK) == 0) {
+      OperationMetrics.measureMicros(MEMORY_MEASUREMENT, bytes.get() / 1024);
+    }
+  }
+
+  /**
+   * Remove a document after this client changed it.
+   */
+  public void invalidate(String key) {
+    Segment segment = segment(key);
+    segment.lock.lock();
+    try {
+      segment.version++;
+      Entry previous = segment.remove(key);
+      if (previous != null) {
+        bytes.addAndGet(-previous.size());
+      }
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  public long memoryBytes() {
+    return bytes.get();
+  }
+}
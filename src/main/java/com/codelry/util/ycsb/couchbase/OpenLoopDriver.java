@@ -0,0 +1,140 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.Benchmark;
+import com.codelry.util.ycsb.Workload;
+import org.apache.commons.cli.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a YCSB workload open loop: operations are sent through {@link CouchbaseAsyncBinding} on a fixed schedule
+ * that does not depend on when earlier operations complete, so a slow cluster cannot slow down the arrival rate.
+ * The workload chooses the operations and keys as usual. Each dispatcher thread sends its share of the target rate,
+ * and the latency of each operation is recorded both from the time it was sent ({@code ASYNC-<OP>}) and from the
+ * time it was scheduled ({@code Intended-ASYNC-<OP>}). Outstanding requests are capped by the binding window, and
+ * the time the schedule is held up by a full window is recorded in {@code ASYNC-BACKPRESSURE}.
+ */
+public class OpenLoopDriver {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OpenLoopDriver.class);
+  public static final String LATE_MEASUREMENT = "OPEN-LOOP-LATE";
+
+  public static void main(String[] args) {
+    Options options = WorkloadDriver.options();
+    options.addOption(new Option("t", "threads", true, "number of dispatcher threads (default 1)"));
+    options.addOption(new Option("r", "rate", true, "target operations per second (default target)"));
+    CommandLine cmd = WorkloadDriver.parse("OpenLoopDriver", options, args);
+
+    try {
+      Properties properties = WorkloadDriver.properties(cmd);
+      boolean load = cmd.hasOption("load");
+      properties.setProperty(Benchmark.DO_TRANSACTIONS_PROPERTY, String.valueOf(!load));
+      if (!properties.containsKey("measurement.interval")) {
+        properties.setProperty("measurement.interval", "both");
+      }
+      int threads = Integer.parseInt(cmd.getOptionValue("threads", "1"));
+      double rate = Double.parseDouble(cmd.getOptionValue("rate", properties.getProperty("target", "0")));
+      if (threads < 1 || rate <= 0) {
+        throw new IllegalArgumentException("A target rate and at least one thread are required");
+      }
+      long operations = WorkloadDriver.operationCount(properties, load);
+      long maxExecutionNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(properties.getProperty("maxexecutiontime", "0")));
+
+      Workload workload = WorkloadDriver.workload(properties);
+      LongAdder done = new LongAdder();
+      List<Thread> dispatchers = new ArrayList<>(threads);
+      List<Throwable> failures = new ArrayList<>();
+      // Connect before the schedule starts so the connection time does not make the first operations late.
+      List<CouchbaseAsyncBinding> bindings = new ArrayList<>(threads);
+      for (int id = 0; id < threads; id++) {
+        CouchbaseAsyncBinding db = new CouchbaseAsyncBinding();
+        db.setProperties(properties);
+        db.init();
+        bindings.add(db);
+      }
+
+      LOGGER.info("Sending {} operations per second from {} dispatcher threads", rate, threads);
+      long start = System.nanoTime();
+      long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate);
+      for (int id = 0; id < threads; id++) {
+        long share = operations / threads + (id < operations % threads ? 1 : 0);
+        int threadId = id;
+        CouchbaseAsyncBinding db = bindings.get(id);
+        // Offset the threads' schedules so the combined arrivals are evenly spaced.
+        long first = start + intervalNanos * id / threads;
+        Thread dispatcher = new Thread(() -> {
+          try {
+            dispatch(db, properties, workload, threadId, threads, share, load, start, first, intervalNanos,
+                maxExecutionNanos, done);
+          } catch (Throwable t) {
+            synchronized (failures) {
+              failures.add(t);
+            }
+          }
+        }, "open-loop-" + id);
+        dispatchers.add(dispatcher);
+        dispatcher.start();
+      }
+      for (Thread dispatcher : dispatchers) {
+        dispatcher.join();
+      }
+      long runtime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      workload.cleanup();
+      for (Throwable failure : failures) {
+        LOGGER.error("Dispatcher failed: {}", failure.getMessage(), failure);
+      }
+
+      System.out.println("[OPEN-LOOP], TargetRate(ops/sec), " + rate);
+      System.out.println("[OPEN-LOOP], Threads, " + threads);
+      WorkloadDriver.report(runtime, done.sum());
+      System.exit(failures.isEmpty() ? 0 : 1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e);
+      e.printStackTrace(System.err);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Send one thread's share of the operations, each at its scheduled time. An operation whose time has already
+   * passed is sent immediately, and how late it was is recorded in {@code OPEN-LOOP-LATE}; the schedule itself is
+   * never shifted, so the intended latency includes the delay.
+   */
+  private static void dispatch(CouchbaseAsyncBinding db, Properties properties, Workload workload, int id,
+                               int threads, long operations, boolean load, long start, long first,
+                               long intervalNanos, long maxExecutionNanos, LongAdder done) throws Exception {
+    try {
+      Object state = workload.initThread(properties, id, threads);
+      for (long i = 0; i < operations; i++) {
+        long intended = first + i * intervalNanos;
+        if ((maxExecutionNanos > 0 && intended - start >= maxExecutionNanos) || workload.isStopRequested()) {
+          break;
+        }
+        long wait = intended - System.nanoTime();
+        if (wait < 0) {
+          OperationMetrics.measureMicros(LATE_MEASUREMENT, TimeUnit.NANOSECONDS.toMicros(-wait));
+        }
+        while (wait > 0) {
+          LockSupport.parkNanos(wait);
+          wait = intended - System.nanoTime();
+        }
+        db.schedule(intended);
+        if (load) {
+          workload.doInsert(db, state);
+        } else {
+          workload.doTransaction(db, state);
+        }
+        done.increment();
+      }
+    } finally {
+      db.cleanup();
+    }
+  }
+}
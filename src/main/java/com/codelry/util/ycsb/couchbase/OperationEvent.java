@@ -0,0 +1,123 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.Status;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A JDK Flight Recorder event for each binding operation, so slow operations can be lined up with GC pauses,
+ * safepoints and SDK events in the same recording.
+ * The event is disabled by default; enable it in a recording with
+ * {@code com.codelry.ycsb.couchbase.Operation#enabled=true}. The event is only
+ * committed for operations that take at least {@code couchbase.jfrThresholdUs}, and the JFR threshold setting of the
+ * recording applies as well. When no recording has the event enabled, the event is never filled in or committed.
+ */
+@Name("com.codelry.ycsb.couchbase.Operation")
+@Label("Couchbase Operation")
+@Category({"YCSB", "Couchbase"})
+@Description("A read, update, insert, delete or scan performed by the Couchbase binding")
+@StackTrace(false)
+@Enabled(false)
+public class OperationEvent extends Event {
+  public static final String COUCHBASE_JFR_THRESHOLD = "couchbase.jfrThresholdUs";
+  private static volatile long thresholdNanos = 0;
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Key Hash")
+  @Description("Hash code of the record key, or of the start key of a scan")
+  int keyHash;
+
+  @Label("Status")
+  String status;
+
+  @Label("Document Size")
+  @Description("Bytes of field names and values written or read")
+  @DataAmount
+  long documentSize;
+
+  /**
+   * Set the minimum operation time for the event to be committed.
+   * @param micros The threshold in microseconds, or 0 to commit every operation.
+   */
+  public static void configure(long micros) {
+    thresholdNanos = TimeUnit.MICROSECONDS.toNanos(micros);
+  }
+
+  /**
+   * Start the event for an operation.
+   * @param document The fields an update or insert writes, whose size must be taken before they are consumed,
+   *                 or null.
+   */
+  public static OperationEvent begin(Map<String, ByteIterator> document) {
+    OperationEvent event = new OperationEvent();
+    if (document != null && event.isEnabled()) {
+      event.documentSize = size(document);
+    }
+    event.begin();
+    return event;
+  }
+
+  /**
+   * End the event and commit it if it is enabled and the operation took at least the threshold.
+   * @param operation The operation name.
+   * @param key The record key.
+   * @param status The operation result.
+   * @param startNanos The time the operation started.
+   * @param document The record that was read, or null.
+   */
+  public static void commit(OperationEvent event, String operation, String key, Status status, long startNanos,
+                            Map<String, ByteIterator> document) {
+    event.end();
+    if (event.shouldCommit() && System.nanoTime() - startNanos >= thresholdNanos) {
+      if (document != null) {
+        event.documentSize += size(document);
+      }
+      event.complete(operation, key, status);
+    }
+  }
+
+  /**
+   * End the event for a scan and commit it if it is enabled and the scan took at least the threshold.
+   * @param startkey The first key of the scan.
+   * @param status The scan result.
+   * @param startNanos The time the scan started.
+   * @param records The records that were read.
+   */
+  public static void commitScan(OperationEvent event, String startkey, Status status, long startNanos,
+                                Iterable<? extends Map<String, ByteIterator>> records) {
+    event.end();
+    if (event.shouldCommit() && System.nanoTime() - startNanos >= thresholdNanos) {
+      for (Map<String, ByteIterator> document : records) {
+        event.documentSize += size(document);
+      }
+      event.complete("SCAN", startkey, status);
+    }
+  }
+
+  private void complete(String operation, String key, Status status) {
+    this.operation = operation;
+    this.keyHash = key.hashCode();
+    this.status = status.getName();
+    commit();
+  }
+
+  private static long size(Map<String, ByteIterator> document) {
+    long size = 0;
+    for (Map.Entry<String, ByteIterator> e : document.entrySet()) {
+      size += e.getKey().length() + e.getValue().bytesLeft();
+    }
+    return size;
+  }
+}
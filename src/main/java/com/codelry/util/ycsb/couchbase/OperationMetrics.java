@@ -0,0 +1,33 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.Status;
+import com.codelry.util.ycsb.measurements.Measurements;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records binding specific measurements next to the standard YCSB operation measurements.
+ */
+public final class OperationMetrics {
+
+  public static void measure(String operation, long startNanos) {
+    measureMicros(operation, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+  }
+
+  public static void measureMicros(String operation, long micros) {
+    Measurements.getMeasurements().measure(operation, (int) Math.min(micros, Integer.MAX_VALUE));
+  }
+
+  public static void measureIntended(String operation, long intendedNanos) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedNanos);
+    Measurements.getMeasurements().measureIntended(operation, (int) Math.min(micros, Integer.MAX_VALUE));
+  }
+
+  public static void status(String operation, Status status) {
+    Measurements.getMeasurements().reportStatus(operation, status);
+  }
+
+  private OperationMetrics() {
+    super();
+  }
+}
@@ -0,0 +1,18 @@
+package com.codelry.util.ycsb.couchbase;
+
+/**
+ * Source used by the binding for full document reads.
+ */
+public enum ReadMode {
+  ACTIVE,
+  HEDGED,
+  ANY_REPLICA,
+  ALL_REPLICAS;
+
+  /**
+   * Parse a property value such as {@code anyReplica} or {@code any_replica}.
+   */
+  public static ReadMode fromProperty(String value) {
+    return valueOf(value.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase());
+  }
+}
@@ -0,0 +1,127 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.couchbase.client.core.error.DocumentLockedException;
+import com.couchbase.client.core.error.DurableWriteInProgressException;
+import com.couchbase.client.core.error.DurableWriteReCommitInProgressException;
+import com.couchbase.client.core.error.RequestCanceledException;
+import com.couchbase.client.core.error.ServerOutOfMemoryException;
+import com.couchbase.client.core.error.ServiceNotAvailableException;
+import com.couchbase.client.core.error.TemporaryFailureException;
+import com.couchbase.client.core.error.TimeoutException;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Retry policy for the data operations of the binding.
+ * Only transient failures are retried, with an exponential backoff and full jitter, until either the maximum number
+ * of attempts or the operation deadline is reached. The policy is used from a plain loop in each operation, so a
+ * retry does not allocate. Operations that needed retries record the number of retries in the {@code RETRIES-<OP>}
+ * measurement and their total time in the {@code RETRY-TIME-<OP>} measurement.
+ */
+public final class RetryPolicy {
+  public static final String COUCHBASE_RETRY_PREFIX = "couchbase.retry.";
+  public static final String MAX_ATTEMPTS = "maxAttempts";
+  public static final String DEADLINE = "deadlineMs";
+  public static final String BASE_DELAY = "baseDelayMs";
+  public static final String MAX_DELAY = "maxDelayMs";
+  public static final RetryPolicy NONE = new RetryPolicy("NONE", 1, 0, 0, 0);
+  private static final int MAX_CAUSE_DEPTH = 4;
+  private final String retriesMeasurement;
+  private final String timeMeasurement;
+  private final int maxAttempts;
+  private final long deadlineNanos;
+  private final long baseDelayNanos;
+  private final long maxDelayNanos;
+
+  public RetryPolicy(String operation, int maxAttempts, long deadlineMs, long baseDelayMs, long maxDelayMs) {
+    this.retriesMeasurement = "RETRIES-" + operation;
+    this.timeMeasurement = "RETRY-TIME-" + operation;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+    this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(baseDelayMs);
+    this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(baseDelayMs, maxDelayMs));
+  }
+
+  /**
+   * Create the policy for an operation. Each setting is read from {@code couchbase.retry.<op>.<setting>}, then from
+   * {@code couchbase.retry.<setting>}, then the default is used.
+   * @param properties The workload properties.
+   * @param operation The operation name, for example {@code read}.
+   */
+  public static RetryPolicy fromProperties(Properties properties, String operation) {
+    String name = operation.toLowerCase();
+    return new RetryPolicy(operation.toUpperCase(),
+        Integer.parseInt(setting(properties, name, MAX_ATTEMPTS, "1")),
+        Long.parseLong(setting(properties, name, DEADLINE, "10000")),
+        Long.parseLong(setting(properties, name, BASE_DELAY, "10")),
+        Long.parseLong(setting(properties, name, MAX_DELAY, "1000")));
+  }
+
+  private static String setting(Properties properties, String operation, String setting, String defaultValue) {
+    String value = properties.getProperty(COUCHBASE_RETRY_PREFIX + operation + "." + setting);
+    return value != null ? value : properties.getProperty(COUCHBASE_RETRY_PREFIX + setting, defaultValue);
+  }
+
+  public int maxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Decide whether a failed attempt should be retried, and wait for the backoff delay if it should.
+   * @param error The failure.
+   * @param attempt The number of attempts made so far, starting at 1.
+   * @param startNanos The time the operation started.
+   * @return true if the operation should be attempted again.
+   */
+  public boolean retry(Throwable error, int attempt, long startNanos) {
+    if (attempt >= maxAttempts || !isTransient(error)) {
+      return false;
+    }
+    long ceiling = Math.min(maxDelayNanos, baseDelayNanos << Math.min(attempt - 1, 20));
+    long delay = ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+    if (System.nanoTime() + delay - startNanos >= deadlineNanos) {
+      return false;
+    }
+    if (delay > 0) {
+      LockSupport.parkNanos(delay);
+    }
+    return true;
+  }
+
+  /**
+   * Record the retry measurements for a finished operation, if it was retried.
+   * @param attempts The number of attempts made.
+   * @param startNanos The time the operation started.
+   */
+  public void complete(int attempts, long startNanos) {
+    if (attempts > 1) {
+      OperationMetrics.measureMicros(retriesMeasurement, attempts - 1);
+      OperationMetrics.measure(timeMeasurement, startNanos);
+    }
+  }
+
+  /**
+   * Check whether a failure is transient: a timeout, a temporary or resource failure on the server, or a request
+   * canceled or rejected while the cluster topology changes. The causes of wrapped exceptions are checked as well.
+   */
+  public static boolean isTransient(Throwable error) {
+    Throwable current = error;
+    for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+      if (current instanceof TemporaryFailureException
+          || current instanceof TimeoutException
+          || current instanceof ServerOutOfMemoryException
+          || current instanceof DocumentLockedException
+          || current instanceof DurableWriteInProgressException
+          || current instanceof DurableWriteReCommitInProgressException
+          || current instanceof RequestCanceledException
+          || current instanceof ServiceNotAvailableException) {
+        return true;
+      }
+      current = current.getCause();
+    }
+    return false;
+  }
+}
@@ -0,0 +1,10 @@
+package com.codelry.util.ycsb.couchbase;
+
+/**
+ * Strategy used by the binding to execute YCSB scans.
+ */
+public enum ScanMode {
+  QUERY,
+  DOCUMENT,
+  RANGE
+}
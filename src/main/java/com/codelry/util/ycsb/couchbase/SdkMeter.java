@@ -0,0 +1,108 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.couchbase.client.core.cnc.Counter;
+import com.couchbase.client.core.cnc.Meter;
+import com.couchbase.client.core.cnc.ValueRecorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An SDK meter that keeps a running count and total of every counter and value recorder the SDK creates, so they
+ * can be served by the {@link MetricsServer}. The SDK creates one instrument for each metric name and tag set, such
+ * as the operation latency recorder for each service and operation.
+ */
+public class SdkMeter implements Meter {
+  private final Map<String, Map<Map<String, String>, Series>> counters = new ConcurrentHashMap<>();
+  private final Map<String, Map<Map<String, String>, Series>> recorders = new ConcurrentHashMap<>();
+
+  /**
+   * The values of one metric name and tag set.
+   */
+  public static final class Series implements Counter, ValueRecorder {
+    private final String name;
+    private final Map<String, String> tags;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+
+    Series(String name, Map<String, String> tags) {
+      this.name = name;
+      this.tags = new TreeMap<>(tags);
+    }
+
+    public String name() {
+      return name;
+    }
+
+    public Map<String, String> tags() {
+      return tags;
+    }
+
+    public long count() {
+      return count.sum();
+    }
+
+    public long total() {
+      return total.sum();
+    }
+
+    @Override
+    public void incrementBy(long increment) {
+      count.add(increment);
+      total.add(increment);
+    }
+
+    @Override
+    public void recordValue(long value) {
+      count.increment();
+      total.add(value);
+    }
+  }
+
+  @Override
+  public Counter counter(String name, Map<String, String> tags) {
+    return series(counters, name, tags);
+  }
+
+  @Override
+  public ValueRecorder valueRecorder(String name, Map<String, String> tags) {
+    return series(recorders, name, tags);
+  }
+
+  /**
+   * Find the series for a name and tag set. The SDK asks for an instrument on every request, so the lookup does not
+   * allocate once the series exists.
+   */
+  private static Series series(Map<String, Map<Map<String, String>, Series>> instruments, String name,
+                               Map<String, String> tags) {
+    Map<Map<String, String>, Series> byTags = instruments.computeIfAbsent(name, key -> new ConcurrentHashMap<>());
+    Series series = byTags.get(tags);
+    if (series == null) {
+      series = byTags.computeIfAbsent(Map.copyOf(tags), key -> new Series(name, key));
+    }
+    return series;
+  }
+
+  public List<Series> counters() {
+    return all(counters);
+  }
+
+  /**
+   * The value recorders, whose count is the number of values recorded and whose total is their sum.
+   */
+  public List<Series> recorders() {
+    return all(recorders);
+  }
+
+  private static List<Series> all(Map<String, Map<Map<String, String>, Series>> instruments) {
+    List<Series> all = new ArrayList<>();
+    for (Map<Map<String, String>, Series> byTags : instruments.values()) {
+      all.addAll(byTags.values());
+    }
+    return all;
+  }
+}
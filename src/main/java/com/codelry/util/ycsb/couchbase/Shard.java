@@ -0,0 +1,78 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.Collection;
+
+/**
+ * One of the connections the binding spreads its client threads over.
+ * Each shard has its own cluster connection, and when the client uses more than one shard, each one has its own SDK
+ * environment with separate event loops and KV endpoints. The latency of every operation sent through a shard is
+ * recorded in the {@code SHARD-<n>} measurement when there is more than one shard.
+ */
+public final class Shard {
+  private final int index;
+  private final Cluster cluster;
+  private final Bucket bucket;
+  private final Collection[] collections;
+  private final boolean owned;
+  private final boolean measured;
+  private final String measurement;
+
+  /**
+   * @param index The shard number.
+   * @param cluster The connected cluster.
+   * @param bucket The test bucket.
+   * @param collections The test collections, in {@link CollectionLayout} order.
+   * @param owned Whether the binding created the SDK environment and must disconnect it.
+   * @param measured Whether operations are measured per shard.
+   */
+  public Shard(int index, Cluster cluster, Bucket bucket, Collection[] collections, boolean owned, boolean measured) {
+    this.index = index;
+    this.cluster = cluster;
+    this.bucket = bucket;
+    this.collections = collections;
+    this.owned = owned;
+    this.measured = measured;
+    this.measurement = "SHARD-" + index;
+  }
+
+  public int index() {
+    return index;
+  }
+
+  public Cluster cluster() {
+    return cluster;
+  }
+
+  public Bucket bucket() {
+    return bucket;
+  }
+
+  public Collection collection() {
+    return collections[0];
+  }
+
+  /**
+   * Get a test collection by its {@link CollectionLayout} index.
+   */
+  public Collection collection(int index) {
+    return collections[index];
+  }
+
+  /**
+   * Record the latency of an operation sent through this shard.
+   * @param startNanos The time the operation started.
+   */
+  public void record(long startNanos) {
+    if (measured) {
+      OperationMetrics.measure(measurement, startNanos);
+    }
+  }
+
+  public void disconnect() {
+    if (owned) {
+      cluster.disconnect();
+    }
+  }
+}
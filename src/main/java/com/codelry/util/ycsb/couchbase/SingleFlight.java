@@ -0,0 +1,84 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.Status;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Coalesces concurrent reads of the same key into a single request.
+ * The first reader of a key becomes the leader and loads the document, and readers that arrive while the load is in
+ * flight wait for it and share a snapshot of the decoded document instead of sending their own request. The leader
+ * can optionally wait for a short window before loading so more readers can join.
+ * Each read is counted in the {@code READ-COALESCE} measurement as {@code LEADER} or {@code COALESCED}.
+ */
+public class SingleFlight {
+  public static final String COUCHBASE_SINGLE_FLIGHT = "couchbase.singleFlight";
+  public static final String COUCHBASE_SINGLE_FLIGHT_WINDOW = "couchbase.singleFlightWindowUs";
+  public static final String MEASUREMENT = "READ-COALESCE";
+  private static final Status LEADER = new Status("LEADER", "Read sent to the cluster");
+  private static final Status COALESCED = new Status("COALESCED", "Read shared an in flight request");
+  private final Map<String, CompletableFuture<Result>> flights = new ConcurrentHashMap<>();
+  private final long windowNanos;
+
+  /**
+   * Loads a whole document.
+   */
+  @FunctionalInterface
+  public interface Loader {
+    Status load(String key, Map<String, ByteIterator> document);
+  }
+
+  /**
+   * The outcome of a load, with the document if it was found, and whether this reader sent the request.
+   */
+  public record Result(Status status, DocumentSnapshot document, boolean leader) {}
+
+  /**
+   * @param windowMicros The time the leader waits for other readers before loading, or 0 to load immediately.
+   */
+  public SingleFlight(long windowMicros) {
+    this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+  }
+
+  /**
+   * Load a document, or wait for the load of the same key that is already in flight.
+   * @param key The record key.
+   * @param loader Loads the document when this reader is the leader.
+   */
+  public Result load(String key, Loader loader) {
+    CompletableFuture<Result> pending = flights.get(key);
+    if (pending == null) {
+      CompletableFuture<Result> flight = new CompletableFuture<>();
+      pending = flights.putIfAbsent(key, flight);
+      if (pending == null) {
+        OperationMetrics.status(MEASUREMENT, LEADER);
+        return lead(key, loader, flight);
+      }
+    }
+    OperationMetrics.status(MEASUREMENT, COALESCED);
+    Result shared = pending.join();
+    return new Result(shared.status(), shared.document(), false);
+  }
+
+  private Result lead(String key, Loader loader, CompletableFuture<Result> flight) {
+    Result result = new Result(Status.ERROR, null, true);
+    try {
+      if (windowNanos > 0) {
+        LockSupport.parkNanos(windowNanos);
+      }
+      Map<String, ByteIterator> document = new HashMap<>();
+      Status status = loader.load(key, document);
+      result = new Result(status, status.isOk() ? DocumentSnapshot.of(document) : null, true);
+      return result;
+    } finally {
+      flights.remove(key, flight);
+      flight.complete(result);
+    }
+  }
+}
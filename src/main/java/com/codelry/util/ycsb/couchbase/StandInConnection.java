@@ -0,0 +1,304 @@
+package com.codelry.util.ycsb.couchbase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves one client connection to the KV stand-in using the memcached binary protocol.
+ * Only the commands the SDK needs for bootstrap, key/value and sub-document operations are implemented; range scans
+ * and other commands are answered with an unknown command status. Requests in the alternative framing, which the SDK
+ * uses for durable writes, are answered with a durability impossible status, or not supported for other frame types.
+ * Authentication is negotiated but credentials are not checked.
+ */
+public class StandInConnection implements Runnable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StandInConnection.class);
+  private static final int HEADER_SIZE = 24;
+  private static final byte REQUEST_MAGIC = (byte) 0x80;
+  private static final byte ALT_REQUEST_MAGIC = (byte) 0x08;
+  private static final byte RESPONSE_MAGIC = (byte) 0x81;
+  private static final short UNKNOWN_COMMAND = 0x81;
+  private static final short NOT_SUPPORTED = 0x83;
+  private static final short DURABILITY_IMPOSSIBLE = 0xa1;
+  private static final int FRAME_DURABILITY = 0x01;
+  private static final short AUTH_CONTINUE = 0x21;
+  private static final short UNKNOWN_COLLECTION = 0x88;
+  private static final int FEATURE_DATATYPE = 0x01;
+  private static final int FEATURE_TCPNODELAY = 0x03;
+  private static final int FEATURE_SELECT_BUCKET = 0x08;
+  private static final int FEATURE_JSON = 0x0b;
+  private static final int FEATURE_COLLECTIONS = 0x12;
+  private static final int SCRAM_ITERATIONS = 4096;
+  private final Socket socket;
+  private final StandInServer server;
+  private final ScheduledExecutorService delayer;
+  private final OutputStream output;
+  private String bucket;
+  private boolean json;
+  private String clientFirstBare;
+  private String serverFirst;
+
+  public StandInConnection(Socket socket, StandInServer server, ScheduledExecutorService delayer) throws IOException {
+    this.socket = socket;
+    this.server = server;
+    this.delayer = delayer;
+    this.output = new BufferedOutputStream(socket.getOutputStream(), 65536);
+  }
+
+  @Override
+  public void run() {
+    try (Socket client = socket) {
+      client.setTcpNoDelay(true);
+      DataInputStream input = new DataInputStream(new BufferedInputStream(client.getInputStream(), 65536));
+      byte[] header = new byte[HEADER_SIZE];
+      while (!client.isClosed()) {
+        input.readFully(header);
+        ByteBuffer frame = ByteBuffer.wrap(header);
+        byte magic = frame.get(0);
+        if (magic != REQUEST_MAGIC && magic != ALT_REQUEST_MAGIC) {
+          throw new IOException("Unsupported request magic " + magic);
+        }
+        int bodyLength = frame.getInt(8);
+        byte[] body = new byte[bodyLength];
+        input.readFully(body);
+        if (magic == ALT_REQUEST_MAGIC) {
+          rejectFramed(frame, body);
+        } else {
+          handle(frame, body);
+        }
+        if (input.available() == 0) {
+          flush();
+        }
+      }
+    } catch (EOFException e) {
+      LOGGER.debug("client disconnected");
+    } catch (IOException e) {
+      LOGGER.debug("connection error: {}", e.getMessage());
+    }
+  }
+
+  private void handle(ByteBuffer header, byte[] body) throws IOException {
+    int opcode = header.get(1) & 0xFF;
+    int keyLength = header.getShort(2) & 0xFFFF;
+    int extrasLength = header.get(4) & 0xFF;
+    byte datatype = header.get(5);
+    int opaque = header.getInt(12);
+    long cas = header.getLong(16);
+    byte[] extras = new byte[extrasLength];
+    System.arraycopy(body, 0, extras, 0, extrasLength);
+    String key = new String(body, extrasLength, keyLength, StandardCharsets.ISO_8859_1);
+    int valueOffset = extrasLength + keyLength;
+    byte[] value = new byte[body.length - valueOffset];
+    System.arraycopy(body, valueOffset, value, 0, value.length);
+    String dataKey = bucket + "/" + key;
+
+    switch (opcode) {
+      case 0x1f -> hello(opcode, opaque, value);
+      case 0x20 -> respond(opcode, opaque, StandInStore.SUCCESS, 0, null, ascii("SCRAM-SHA512 PLAIN"), (byte) 0);
+      case 0x21, 0x22 -> authenticate(opcode, opaque, key, value);
+      case 0x89 -> {
+        bucket = key;
+        respond(opcode, opaque, StandInStore.SUCCESS, 0, null, null, (byte) 0);
+      }
+      case 0x0a -> respond(opcode, opaque, StandInStore.SUCCESS, 0, null, null, (byte) 0);
+      case 0xb5 -> respond(opcode, opaque, StandInStore.SUCCESS, 0, null,
+          bucket == null ? server.globalConfig() : server.bucketConfig(bucket), (byte) 0x01);
+      case 0xbb -> collectionId(opcode, opaque, key.isEmpty() ? new String(value, StandardCharsets.UTF_8) : key);
+      case 0x00 -> {
+        StandInStore.Item item = server.store().get(dataKey);
+        if (item == null) {
+          delayed(opcode, opaque, StandInStore.KEY_ENOENT, 0, null, null, (byte) 0);
+        } else {
+          delayed(opcode, opaque, StandInStore.SUCCESS, item.cas(), ByteBuffer.allocate(4).putInt(item.flags()).array(),
+              item.value(), json ? item.datatype() : 0);
+        }
+      }
+      case 0x01, 0x02, 0x03 -> {
+        int flags = extrasLength >= 4 ? ByteBuffer.wrap(extras).getInt(0) : 0;
+        StandInStore.Result result = server.store().store(dataKey, value, flags, datatype,
+            opcode == 0x02 ? 0 : cas, opcode - 1);
+        delayed(opcode, opaque, result.status(), result.cas(), null, null, (byte) 0);
+      }
+      case 0x04 -> {
+        StandInStore.Result result = server.store().remove(dataKey, cas);
+        delayed(opcode, opaque, result.status(), result.cas(), null, null, (byte) 0);
+      }
+      case 0xa0 -> {
+        StandInStore.Item item = server.store().get(dataKey);
+        if (item == null) {
+          delayed(opcode, opaque, StandInStore.KEY_ENOENT, 0, null, null, (byte) 0);
+        } else {
+          // Deleted flag, flags, expiry, sequence number and, for version 2 requests, the datatype.
+          boolean version2 = extrasLength > 0 && extras[0] == 2;
+          ByteBuffer meta = ByteBuffer.allocate(version2 ? 21 : 20)
+              .putInt(0).putInt(item.flags()).putInt(0).putLong(item.cas());
+          if (version2) {
+            meta.put(json ? item.datatype() : 0);
+          }
+          delayed(opcode, opaque, StandInStore.SUCCESS, item.cas(), meta.array(), null, (byte) 0);
+        }
+      }
+      case 0xd0 -> {
+        StandInStore.Result result = server.store().lookupIn(dataKey, value);
+        delayed(opcode, opaque, result.status(), result.cas(), null, result.body(), (byte) 0);
+      }
+      case 0xd1 -> {
+        int docFlags = extrasLength == 1 ? extras[0] : extrasLength == 5 ? extras[4] : 0;
+        boolean create = (docFlags & 0x03) != 0;
+        StandInStore.Result result = server.store().mutateIn(dataKey, value, cas, create);
+        delayed(opcode, opaque, result.status(), result.cas(), null, result.body(), (byte) 0);
+      }
+      default -> respond(opcode, opaque, UNKNOWN_COMMAND, 0, null, null, (byte) 0);
+    }
+  }
+
+  /**
+   * Answer a request in the alternative framing without executing it. The first framing extra identifies the
+   * request option; a durability requirement can't be met by a single node without replicas.
+   */
+  private void rejectFramed(ByteBuffer header, byte[] body) throws IOException {
+    int opcode = header.get(1) & 0xFF;
+    int framingLength = header.get(2) & 0xFF;
+    int opaque = header.getInt(12);
+    int frameId = framingLength > 0 ? (body[0] & 0xFF) >>> 4 : -1;
+    respond(opcode, opaque, frameId == FRAME_DURABILITY ? DURABILITY_IMPOSSIBLE : NOT_SUPPORTED, 0, null, null,
+        (byte) 0);
+  }
+
+  private void hello(int opcode, int opaque, byte[] requested) throws IOException {
+    ByteBuffer features = ByteBuffer.allocate(requested.length);
+    ByteBuffer request = ByteBuffer.wrap(requested);
+    while (request.remaining() >= 2) {
+      int feature = request.getShort() & 0xFFFF;
+      if (feature == FEATURE_DATATYPE || feature == FEATURE_TCPNODELAY || feature == FEATURE_SELECT_BUCKET
+          || feature == FEATURE_JSON || feature == FEATURE_COLLECTIONS) {
+        features.putShort((short) feature);
+        json |= feature == FEATURE_JSON;
+      }
+    }
+    byte[] enabled = new byte[features.position()];
+    features.flip();
+    features.get(enabled);
+    respond(opcode, opaque, StandInStore.SUCCESS, 0, null, enabled, (byte) 0);
+  }
+
+  private void collectionId(int opcode, int opaque, String path) throws IOException {
+    String[] elements = path.split("\\.");
+    if (elements.length != 2) {
+      respond(opcode, opaque, UNKNOWN_COLLECTION, 0, null, null, (byte) 0);
+      return;
+    }
+    int id = server.store().collectionId(path);
+    byte[] extras = ByteBuffer.allocate(12).putLong(server.store().manifestUid()).putInt(id).array();
+    respond(opcode, opaque, StandInStore.SUCCESS, 0, extras, null, (byte) 0);
+  }
+
+  /**
+   * Run PLAIN or SCRAM-SHA512 authentication. SCRAM is completed with a valid server signature so the client
+   * accepts it, but the client proof is not verified.
+   */
+  private void authenticate(int opcode, int opaque, String mechanism, byte[] payload) throws IOException {
+    String message = new String(payload, StandardCharsets.UTF_8);
+    if (!mechanism.startsWith("SCRAM")) {
+      respond(opcode, opaque, StandInStore.SUCCESS, 0, null, ascii("Authenticated"), (byte) 0);
+    } else if (opcode == 0x21) {
+      clientFirstBare = message.substring(message.indexOf("n=", 2));
+      String clientNonce = clientFirstBare.substring(clientFirstBare.indexOf("r=") + 2);
+      byte[] nonce = new byte[16];
+      new SecureRandom().nextBytes(nonce);
+      serverFirst = "r=" + clientNonce + Base64.getEncoder().encodeToString(nonce)
+          + ",s=" + Base64.getEncoder().encodeToString(ascii(mechanism))
+          + ",i=" + SCRAM_ITERATIONS;
+      respond(opcode, opaque, AUTH_CONTINUE, 0, null, ascii(serverFirst), (byte) 0);
+    } else {
+      String clientFinal = message.substring(0, message.indexOf(",p="));
+      String authMessage = clientFirstBare + "," + serverFirst + "," + clientFinal;
+      try {
+        String password = server.password();
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), ascii(mechanism), SCRAM_ITERATIONS, 512);
+        byte[] salted = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA512").generateSecret(spec).getEncoded();
+        byte[] serverKey = hmac(salted, ascii("Server Key"));
+        byte[] signature = hmac(serverKey, ascii(authMessage));
+        respond(opcode, opaque, StandInStore.SUCCESS, 0, null,
+            ascii("v=" + Base64.getEncoder().encodeToString(signature)), (byte) 0);
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  private static byte[] hmac(byte[] key, byte[] data) throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA512");
+    mac.init(new SecretKeySpec(key, "HmacSHA512"));
+    return mac.doFinal(data);
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void delayed(int opcode, int opaque, short status, long cas, byte[] extras, byte[] value, byte datatype)
+      throws IOException {
+    long latency = server.latencyMicros();
+    if (latency <= 0) {
+      respond(opcode, opaque, status, cas, extras, value, datatype);
+      return;
+    }
+    delayer.schedule(() -> {
+      try {
+        respond(opcode, opaque, status, cas, extras, value, datatype);
+        flush();
+      } catch (IOException e) {
+        LOGGER.debug("response error: {}", e.getMessage());
+      }
+    }, latency, TimeUnit.MICROSECONDS);
+  }
+
+  private void respond(int opcode, int opaque, short status, long cas, byte[] extras, byte[] value, byte datatype)
+      throws IOException {
+    int extrasLength = extras == null ? 0 : extras.length;
+    int valueLength = value == null ? 0 : value.length;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.put(RESPONSE_MAGIC)
+        .put((byte) opcode)
+        .putShort((short) 0)
+        .put((byte) extrasLength)
+        .put(datatype)
+        .putShort(status)
+        .putInt(extrasLength + valueLength)
+        .putInt(opaque)
+        .putLong(cas);
+    synchronized (output) {
+      output.write(header.array());
+      if (extras != null) {
+        output.write(extras);
+      }
+      if (value != null) {
+        output.write(value);
+      }
+    }
+  }
+
+  private void flush() throws IOException {
+    synchronized (output) {
+      output.flush();
+    }
+  }
+}
@@ -0,0 +1,314 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single node, in-process stand-in for a Couchbase cluster.
+ * It serves the KV binary protocol and the minimal REST endpoints needed to bootstrap a client, and keeps all data
+ * in memory. An optional latency can be added to every data operation response. This makes it possible to run
+ * the KV workloads (YCSB workloads A, B, C, D and F) and to measure the client side overhead of the binding without
+ * a cluster. There is no query service, and the bucket does not advertise KV range scans, so scans fail in every
+ * scan mode, workload E can't run, and index creation is not available.
+ */
+public class StandInServer implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StandInServer.class);
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private static final int NUM_VBUCKETS = 1024;
+  private final String hostname;
+  private final int kvPort;
+  private final int mgmtPort;
+  private final String password;
+  private volatile long latencyMicros;
+  private final StandInStore store = new StandInStore();
+  private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+    Thread thread = new Thread(r, "standin-kv");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final ScheduledExecutorService delayer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "standin-delay");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private ServerSocket kvSocket;
+  private HttpServer httpServer;
+
+  public StandInServer(String hostname, int kvPort, int mgmtPort, String password, long latencyMicros) {
+    this.hostname = hostname;
+    this.kvPort = kvPort;
+    this.mgmtPort = mgmtPort;
+    this.password = password;
+    this.latencyMicros = latencyMicros;
+  }
+
+  /**
+   * Start accepting KV and REST connections.
+   */
+  public StandInServer start() throws IOException {
+    kvSocket = new ServerSocket(kvPort, 1024, InetAddress.getByName(hostname));
+    httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName(hostname), mgmtPort), 128);
+    httpServer.createContext("/", this::rest);
+    httpServer.setExecutor(connections);
+    httpServer.start();
+    Thread acceptor = new Thread(this::accept, "standin-accept");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    LOGGER.info("KV stand-in listening on {} (kv {}, mgmt {})", hostname, kvPort, mgmtPort);
+    return this;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (httpServer != null) {
+      httpServer.stop(0);
+    }
+    if (kvSocket != null) {
+      kvSocket.close();
+    }
+    connections.shutdownNow();
+    delayer.shutdownNow();
+  }
+
+  public StandInStore store() {
+    return store;
+  }
+
+  public String password() {
+    return password;
+  }
+
+  public long latencyMicros() {
+    return latencyMicros;
+  }
+
+  public void latencyMicros(long latencyMicros) {
+    this.latencyMicros = latencyMicros;
+  }
+
+  private void accept() {
+    while (!kvSocket.isClosed()) {
+      try {
+        Socket socket = kvSocket.accept();
+        connections.execute(new StandInConnection(socket, this, delayer));
+      } catch (IOException e) {
+        if (!kvSocket.isClosed()) {
+          LOGGER.error("accept error: {}", e.getMessage());
+        }
+      }
+    }
+  }
+
+  private ObjectNode nodeServices() {
+    ObjectNode node = mapper.createObjectNode();
+    node.put("hostname", hostname);
+    node.put("thisNode", true);
+    node.putObject("services").put("kv", kvPort).put("mgmt", mgmtPort);
+    return node;
+  }
+
+  /**
+   * The cluster level configuration returned before a bucket is selected.
+   */
+  public byte[] globalConfig() throws IOException {
+    ObjectNode config = mapper.createObjectNode();
+    config.put("rev", 1);
+    config.put("revEpoch", 1);
+    config.putArray("nodesExt").add(nodeServices());
+    config.putArray("clusterCapabilitiesVer").add(1).add(0);
+    config.putObject("clusterCapabilities");
+    return mapper.writeValueAsBytes(config);
+  }
+
+  /**
+   * The bucket configuration, with every vBucket mapped to this node.
+   * @param bucket The bucket name.
+   */
+  public byte[] bucketConfig(String bucket) throws IOException {
+    return mapper.writeValueAsBytes(bucketConfigNode(bucket));
+  }
+
+  private ObjectNode bucketConfigNode(String bucket) {
+    ObjectNode config = mapper.createObjectNode();
+    config.put("rev", 1);
+    config.put("revEpoch", 1);
+    config.put("name", bucket);
+    config.put("uuid", Integer.toHexString(bucket.hashCode()));
+    config.put("nodeLocator", "vbucket");
+    config.put("bucketType", "membase");
+    config.put("storageBackend", "magma");
+    config.put("collectionsManifestUid", Long.toHexString(store.manifestUid()));
+    ArrayNode capabilities = config.putArray("bucketCapabilities");
+    for (String capability : new String[]{"collections", "cbhello", "touch", "cccp", "nodesExt", "xattr"}) {
+      capabilities.add(capability);
+    }
+    config.putArray("bucketCapabilitiesVer");
+    ObjectNode node = config.putArray("nodes").addObject();
+    node.put("hostname", hostname + ":" + mgmtPort);
+    node.putObject("ports").put("direct", kvPort);
+    config.putArray("nodesExt").add(nodeServices());
+    ObjectNode serverMap = config.putObject("vBucketServerMap");
+    serverMap.put("hashAlgorithm", "CRC");
+    serverMap.put("numReplicas", 0);
+    serverMap.putArray("serverList").add(hostname + ":" + kvPort);
+    ArrayNode vBucketMap = serverMap.putArray("vBucketMap");
+    for (int i = 0; i < NUM_VBUCKETS; i++) {
+      vBucketMap.addArray().add(0);
+    }
+    config.putArray("clusterCapabilitiesVer").add(1).add(0);
+    config.putObject("clusterCapabilities");
+    return config;
+  }
+
+  private ObjectNode manifest() {
+    ObjectNode manifest = mapper.createObjectNode();
+    manifest.put("uid", Long.toHexString(store.manifestUid()));
+    Map<String, ObjectNode> scopes = new TreeMap<>();
+    for (Map.Entry<String, Integer> collection : store.collections().entrySet()) {
+      String[] path = collection.getKey().split("\\.");
+      ObjectNode scope = scopes.computeIfAbsent(path[0], name -> {
+        ObjectNode entry = mapper.createObjectNode();
+        entry.put("name", name);
+        entry.put("uid", Integer.toHexString(name.equals("_default") ? 0 : name.hashCode() & 0xFFFF));
+        entry.putArray("collections");
+        return entry;
+      });
+      ((ArrayNode) scope.get("collections")).addObject()
+          .put("name", path[1])
+          .put("uid", Integer.toHexString(collection.getValue()));
+    }
+    ArrayNode list = manifest.putArray("scopes");
+    scopes.values().forEach(list::add);
+    return manifest;
+  }
+
+  private void rest(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    String method = exchange.getRequestMethod();
+    String[] elements = path.replaceAll("^/+|/+$", "").split("/");
+    Object body;
+    int status = 200;
+    if (path.equals("/pools")) {
+      ObjectNode pools = mapper.createObjectNode();
+      pools.put("isAdminCreds", true);
+      pools.put("implementationVersion", "7.6.0-0000-enterprise");
+      pools.putArray("pools").addObject().put("name", "default").put("uri", "/pools/default");
+      body = pools;
+    } else if (path.equals("/pools/default")) {
+      ObjectNode pool = mapper.createObjectNode();
+      pool.put("name", "default");
+      pool.put("clusterName", "standin");
+      ObjectNode node = pool.putArray("nodes").addObject();
+      node.put("hostname", hostname + ":" + mgmtPort);
+      node.put("version", "7.6.0-0000-enterprise");
+      node.put("clusterMembership", "active");
+      node.put("status", "healthy");
+      node.putArray("services").add("kv");
+      node.putObject("ports").put("direct", kvPort);
+      pool.putObject("buckets").put("uri", "/pools/default/buckets");
+      body = pool;
+    } else if (path.equals("/pools/default/nodeServices")) {
+      ObjectNode services = mapper.createObjectNode();
+      services.put("rev", 1);
+      services.putArray("nodesExt").add(nodeServices());
+      body = services;
+    } else if (path.equals("/pools/default/buckets")) {
+      if (method.equals("POST")) {
+        status = 202;
+        body = mapper.createObjectNode();
+      } else {
+        body = mapper.createArrayNode();
+      }
+    } else if (elements.length >= 4 && elements[0].equals("pools") && (elements[2].equals("buckets")
+        || elements[2].equals("b") || elements[2].equals("bucketsStreaming"))) {
+      String bucket = elements[3];
+      if (elements.length >= 5 && elements[4].equals("scopes")) {
+        if (method.equals("POST")) {
+          String form = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+          String name = form.replaceAll(".*name=([^&]*).*", "$1");
+          if (elements.length >= 7) {
+            store.collectionId(elements[5] + "." + name);
+          }
+          body = mapper.createObjectNode().put("uid", Long.toHexString(store.manifestUid()));
+        } else {
+          body = manifest();
+        }
+      } else if (method.equals("DELETE")) {
+        body = mapper.createObjectNode();
+      } else {
+        ObjectNode config = bucketConfigNode(bucket);
+        config.putObject("quota").put("ram", 1L << 30).put("rawRAM", 1L << 30);
+        config.putObject("basicStats").put("itemCount", store.size());
+        config.put("replicaNumber", 0);
+        body = config;
+      }
+    } else {
+      LOGGER.debug("unsupported REST request {} {}", method, path);
+      status = 404;
+      body = mapper.createObjectNode().put("error", "not supported by the KV stand-in");
+    }
+    byte[] response = mapper.writeValueAsBytes(body);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, response.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(response);
+    }
+  }
+
+  public static void main(String[] args) {
+    Options options = new Options();
+    CommandLine cmd = null;
+
+    options.addOption(new Option("h", "host", true, "listen address (default 127.0.0.1)"));
+    options.addOption(new Option("k", "kvPort", true, "KV port (default 11210)"));
+    options.addOption(new Option("m", "mgmtPort", true, "REST port (default 8091)"));
+    options.addOption(new Option("p", "password", true, "password used for SCRAM authentication (default password)"));
+    options.addOption(new Option("l", "latency", true, "latency added to each data operation in microseconds"));
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter formatter = new HelpFormatter();
+
+    try {
+      cmd = parser.parse(options, args);
+    } catch (ParseException e) {
+      System.out.println(e.getMessage());
+      formatter.printHelp("StandInServer", options);
+      System.exit(1);
+    }
+
+    try {
+      StandInServer server = new StandInServer(
+          cmd.getOptionValue("host", "127.0.0.1"),
+          Integer.parseInt(cmd.getOptionValue("kvPort", "11210")),
+          Integer.parseInt(cmd.getOptionValue("mgmtPort", "8091")),
+          cmd.getOptionValue("password", "password"),
+          Long.parseLong(cmd.getOptionValue("latency", "0")));
+      server.start();
+      Thread.currentThread().join();
+    } catch (Exception e) {
+      System.err.println("Error: " + e);
+      e.printStackTrace(System.err);
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,300 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory document store for the KV stand-in.
+ * Keys include the collection ID prefix sent by the client, so each collection has its own key space.
+ */
+public class StandInStore {
+  public static final short SUCCESS = 0x00;
+  public static final short KEY_ENOENT = 0x01;
+  public static final short KEY_EEXISTS = 0x02;
+  public static final short EINVAL = 0x04;
+  public static final short SUBDOC_PATH_ENOENT = 0xc0;
+  public static final short SUBDOC_PATH_EEXISTS = 0xc9;
+  public static final short SUBDOC_DOC_NOT_JSON = 0xc6;
+  public static final short SUBDOC_MULTI_PATH_FAILURE = 0xcc;
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private final Map<String, Item> items = new ConcurrentHashMap<>();
+  private final Map<String, Integer> collections = new ConcurrentHashMap<>();
+  private final AtomicLong casCounter = new AtomicLong(System.currentTimeMillis() << 16);
+  private final AtomicInteger collectionCounter = new AtomicInteger(8);
+  private final AtomicLong manifestUid = new AtomicLong(1);
+
+  /**
+   * A stored document.
+   */
+  public record Item(byte[] value, int flags, byte datatype, long cas) {}
+
+  /**
+   * The outcome of a store operation.
+   */
+  public record Result(short status, long cas, byte[] body) {
+    static Result of(short status) {
+      return new Result(status, 0, null);
+    }
+  }
+
+  public StandInStore() {
+    collections.put("_default._default", 0);
+  }
+
+  public Item get(String key) {
+    return items.get(key);
+  }
+
+  public int size() {
+    return items.size();
+  }
+
+  public long manifestUid() {
+    return manifestUid.get();
+  }
+
+  /**
+   * Get the ID of a collection, creating the collection if it does not exist.
+   * @param path The collection path in {@code scope.collection} form.
+   */
+  public int collectionId(String path) {
+    return collections.computeIfAbsent(path, p -> {
+      manifestUid.incrementAndGet();
+      return collectionCounter.getAndIncrement();
+    });
+  }
+
+  public Map<String, Integer> collections() {
+    return collections;
+  }
+
+  /**
+   * Store a document.
+   * @param mode Store mode: 0 for upsert, 1 for insert, 2 for replace.
+   */
+  public Result store(String key, byte[] value, int flags, byte datatype, long cas, int mode) {
+    Result[] result = new Result[1];
+    items.compute(key, (k, current) -> {
+      if (current == null && (mode == 2 || cas != 0)) {
+        result[0] = Result.of(KEY_ENOENT);
+        return null;
+      }
+      if (current != null && (mode == 1 || (cas != 0 && cas != current.cas()))) {
+        result[0] = Result.of(KEY_EEXISTS);
+        return current;
+      }
+      Item item = new Item(value, flags, datatype, casCounter.incrementAndGet());
+      result[0] = new Result(SUCCESS, item.cas(), null);
+      return item;
+    });
+    return result[0];
+  }
+
+  public Result remove(String key, long cas) {
+    Result[] result = new Result[1];
+    items.compute(key, (k, current) -> {
+      if (current == null) {
+        result[0] = Result.of(KEY_ENOENT);
+        return null;
+      }
+      if (cas != 0 && cas != current.cas()) {
+        result[0] = Result.of(KEY_EEXISTS);
+        return current;
+      }
+      result[0] = new Result(SUCCESS, casCounter.incrementAndGet(), null);
+      return null;
+    });
+    return result[0];
+  }
+
+  /**
+   * Execute a sub-document multi lookup.
+   * Each spec is an opcode, flags, a 2 byte path length and the path. Each result is a 2 byte status, a 4 byte
+   * value length and the value.
+   */
+  public Result lookupIn(String key, byte[] specs) throws IOException {
+    Item item = items.get(key);
+    if (item == null) {
+      return Result.of(KEY_ENOENT);
+    }
+    JsonNode document = parse(item.value());
+    ByteOutput output = new ByteOutput();
+    boolean failed = false;
+    int position = 0;
+    while (position < specs.length) {
+      int opcode = specs[position] & 0xFF;
+      int pathLength = ((specs[position + 2] & 0xFF) << 8) | (specs[position + 3] & 0xFF);
+      String path = new String(specs, position + 4, pathLength, StandardCharsets.UTF_8);
+      position += 4 + pathLength;
+      byte[] value = new byte[0];
+      short status = SUCCESS;
+      if (opcode == 0x00) {
+        value = item.value();
+      } else if (document == null) {
+        status = SUBDOC_DOC_NOT_JSON;
+      } else {
+        JsonNode node = find(document, path);
+        if (node == null) {
+          status = SUBDOC_PATH_ENOENT;
+        } else if (opcode == 0xc5) {
+          value = mapper.writeValueAsBytes(node);
+        } else if (opcode == 0xd2) {
+          value = String.valueOf(node.size()).getBytes(StandardCharsets.UTF_8);
+        }
+      }
+      failed |= status != SUCCESS;
+      output.writeShort(status);
+      output.writeInt(value.length);
+      output.write(value);
+    }
+    return new Result(failed ? SUBDOC_MULTI_PATH_FAILURE : SUCCESS, item.cas(), output.toByteArray());
+  }
+
+  /**
+   * Execute a sub-document multi mutation.
+   * Each spec is an opcode, flags, a 2 byte path length, a 4 byte value length, the path and the value.
+   * @param create Create the document if it does not exist.
+   */
+  public Result mutateIn(String key, byte[] specs, long cas, boolean create) {
+    Result[] result = new Result[1];
+    items.compute(key, (k, current) -> {
+      try {
+        if (current == null && !create) {
+          result[0] = Result.of(KEY_ENOENT);
+          return null;
+        }
+        if (current != null && cas != 0 && cas != current.cas()) {
+          result[0] = Result.of(KEY_EEXISTS);
+          return current;
+        }
+        JsonNode parsed = current == null ? mapper.createObjectNode() : parse(current.value());
+        if (!(parsed instanceof ObjectNode)) {
+          result[0] = Result.of(SUBDOC_DOC_NOT_JSON);
+          return current;
+        }
+        ObjectNode document = (ObjectNode) parsed;
+        byte[] replacement = null;
+        int position = 0;
+        int index = 0;
+        while (position < specs.length) {
+          int opcode = specs[position] & 0xFF;
+          int pathLength = ((specs[position + 2] & 0xFF) << 8) | (specs[position + 3] & 0xFF);
+          int valueLength = ((specs[position + 4] & 0xFF) << 24) | ((specs[position + 5] & 0xFF) << 16)
+              | ((specs[position + 6] & 0xFF) << 8) | (specs[position + 7] & 0xFF);
+          String path = new String(specs, position + 8, pathLength, StandardCharsets.UTF_8);
+          byte[] value = new byte[valueLength];
+          System.arraycopy(specs, position + 8 + pathLength, value, 0, valueLength);
+          position += 8 + pathLength + valueLength;
+          short status = apply(document, opcode, path, value);
+          if (opcode == 0x01) {
+            replacement = value;
+          }
+          if (status != SUCCESS) {
+            ByteOutput output = new ByteOutput();
+            output.write(new byte[]{(byte) index});
+            output.writeShort(status);
+            result[0] = new Result(SUBDOC_MULTI_PATH_FAILURE, 0, output.toByteArray());
+            return current;
+          }
+          index++;
+        }
+        byte[] value = replacement != null ? replacement : mapper.writeValueAsBytes(document);
+        Item item = new Item(value, current == null ? 0x02000000 : current.flags(), (byte) 0x01,
+            casCounter.incrementAndGet());
+        result[0] = new Result(SUCCESS, item.cas(), null);
+        return item;
+      } catch (IOException e) {
+        result[0] = Result.of(EINVAL);
+        return current;
+      }
+    });
+    return result[0];
+  }
+
+  private static short apply(ObjectNode document, int opcode, String path, byte[] value) throws IOException {
+    if (opcode == 0x01) {
+      return SUCCESS;
+    }
+    int split = path.lastIndexOf('.');
+    ObjectNode parent = document;
+    if (split > 0) {
+      JsonNode node = find(document, path.substring(0, split));
+      if (!(node instanceof ObjectNode)) {
+        return SUBDOC_PATH_ENOENT;
+      }
+      parent = (ObjectNode) node;
+    }
+    String field = split > 0 ? path.substring(split + 1) : path;
+    switch (opcode) {
+      case 0xc8:
+        if (parent.has(field)) {
+          return SUBDOC_PATH_EEXISTS;
+        }
+        parent.set(field, mapper.readTree(value));
+        return SUCCESS;
+      case 0xc9:
+        parent.set(field, mapper.readTree(value));
+        return SUCCESS;
+      case 0xcb:
+        if (!parent.has(field)) {
+          return SUBDOC_PATH_ENOENT;
+        }
+        parent.set(field, mapper.readTree(value));
+        return SUCCESS;
+      case 0xca:
+        return parent.remove(field) == null ? SUBDOC_PATH_ENOENT : SUCCESS;
+      default:
+        return EINVAL;
+    }
+  }
+
+  private static JsonNode parse(byte[] value) {
+    try {
+      return mapper.readTree(value);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static JsonNode find(JsonNode document, String path) {
+    JsonNode node = document;
+    for (String element : path.split("\\.")) {
+      if (node == null || !node.isObject()) {
+        return null;
+      }
+      node = node.get(element);
+    }
+    return node;
+  }
+
+  /**
+   * Growable big-endian byte buffer.
+   */
+  static final class ByteOutput extends ByteArrayOutputStream {
+    void writeShort(int value) {
+      write(value >>> 8);
+      write(value);
+    }
+
+    void writeInt(int value) {
+      write(value >>> 24);
+      write(value >>> 16);
+      write(value >>> 8);
+      write(value);
+    }
+
+    @Override
+    public void write(byte[] value) {
+      write(value, 0, value.length);
+    }
+  }
+}
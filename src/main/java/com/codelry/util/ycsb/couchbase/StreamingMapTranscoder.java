@@ -0,0 +1,186 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.couchbase.client.core.error.InvalidArgumentException;
+import com.couchbase.client.core.msg.kv.CodecFlags;
+import com.couchbase.client.java.CommonOptions;
+import com.couchbase.client.java.codec.Transcoder;
+import com.couchbase.client.java.codec.TypeRef;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.couchbase.client.core.error.EncodingFailureException;
+import com.couchbase.client.core.error.DecodingFailureException;
+import static com.couchbase.client.core.logging.RedactableArgument.redactUser;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.StringByteIterator;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A Map transcoder built on the Jackson streaming API.
+ * Decoded string values are {@link ByteSliceIterator} instances over the original document bytes, and encoded
+ * values are written from the ByteIterator bytes without creating intermediate Strings.
+ */
+public class StreamingMapTranscoder implements Transcoder {
+
+  private static final JsonFactory factory = new JsonFactory();
+  private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[1024]);
+  private static final ThreadLocal<ByteArrayBuilder> builders = ThreadLocal.withInitial(() -> new ByteArrayBuilder(1024));
+  public static final StreamingMapTranscoder INSTANCE = new StreamingMapTranscoder();
+
+  private StreamingMapTranscoder() {
+    super();
+  }
+
+  @Override
+  public EncodedValue encode(final Object input) {
+    if (input instanceof CommonOptions.BuiltCommonOptions || input instanceof CommonOptions) {
+      throw InvalidArgumentException.fromMessage("No content provided, cannot " +
+          "encode " + input.getClass().getSimpleName() + " as content!");
+    }
+
+    if (input instanceof byte[]) {
+      return new EncodedValue((byte[]) input, CodecFlags.JSON_COMPAT_FLAGS);
+    } else if (input instanceof Map) {
+      try {
+        return new EncodedValue(encodeMap((Map<?, ?>) input), CodecFlags.JSON_COMPAT_FLAGS);
+      } catch (Throwable t) {
+        throw new EncodingFailureException("Serializing of content + " + redactUser(input) + " to JSON failed.", t);
+      }
+    } else {
+      throw InvalidArgumentException.fromMessage("Only byte[] and Map types are supported for the StreamingMapTranscoder!");
+    }
+  }
+
+  @Override
+  public <T> T decode(final Class<T> target, final byte[] input, int flags) {
+    return decodeTarget(target, input);
+  }
+
+  @Override
+  public <T> T decode(final TypeRef<T> target, final byte[] input, final int flags) {
+    return decodeTarget(target.type(), input);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T decodeTarget(final Type target, final byte[] input) {
+    if (target.equals(byte[].class)) {
+      return (T) input;
+    }
+    Type raw = target;
+    if (target instanceof ParameterizedType) {
+      raw = ((ParameterizedType) target).getRawType();
+    }
+    if (raw.equals(Map.class) || raw.equals(HashMap.class)) {
+      try {
+        return (T) decodeMap(input);
+      } catch (Throwable e) {
+        throw new DecodingFailureException(e);
+      }
+    }
+    throw new DecodingFailureException("StreamingMapTranscoder can only decode into either byte[] or Map!");
+  }
+
+  /**
+   * Encode a map of field values as a JSON object.
+   * The output is collected in a builder that each thread reuses, so only the returned array is allocated per call.
+   * @param input The map to encode.
+   */
+  public static byte[] encodeMap(Map<?, ?> input) throws IOException {
+    ByteArrayBuilder output = builders.get();
+    try {
+      try (JsonGenerator gen = factory.createGenerator(output)) {
+        gen.writeStartObject();
+        for (Map.Entry<?, ?> entry : input.entrySet()) {
+          gen.writeFieldName(entry.getKey().toString());
+          writeValue(gen, entry.getValue());
+        }
+        gen.writeEndObject();
+      }
+      return output.toByteArray();
+    } finally {
+      output.reset();
+    }
+  }
+
+  /**
+   * Write a field value as a JSON string from its raw bytes.
+   * @param gen The generator to write to.
+   * @param value The value to write.
+   */
+  public static void writeValue(JsonGenerator gen, Object value) throws IOException {
+    if (value instanceof ByteSliceIterator) {
+      ByteSliceIterator slice = (ByteSliceIterator) value;
+      gen.writeUTF8String(slice.buffer(), slice.offset(), slice.length());
+    } else if (value instanceof ByteIterator) {
+      ByteIterator iterator = (ByteIterator) value;
+      int size = (int) iterator.bytesLeft();
+      byte[] buffer = scratch.get();
+      if (buffer.length < size) {
+        buffer = new byte[Math.max(size, buffer.length * 2)];
+        scratch.set(buffer);
+      }
+      int end = 0;
+      while (iterator.hasNext() && end < buffer.length) {
+        end = iterator.nextBuf(buffer, end);
+      }
+      gen.writeUTF8String(buffer, 0, end);
+    } else if (value == null) {
+      gen.writeNull();
+    } else {
+      gen.writeString(value.toString());
+    }
+  }
+
+  /**
+   * Decode a JSON object into a map of lazy field values.
+   * String values without escape sequences point into the input array, other values are materialized.
+   * @param input The JSON document.
+   */
+  public static HashMap<String, ByteIterator> decodeMap(byte[] input) throws IOException {
+    HashMap<String, ByteIterator> result = new HashMap<>();
+    try (JsonParser parser = factory.createParser(input)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new DecodingFailureException("Document is not a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.currentName();
+        JsonToken token = parser.nextToken();
+        int start = (int) parser.currentTokenLocation().getByteOffset();
+        if (token == JsonToken.VALUE_STRING) {
+          int end = start >= 0 && input[start] == '"' ? stringEnd(input, start + 1) : -1;
+          if (end < 0) {
+            result.put(name, new StringByteIterator(parser.getText()));
+          } else {
+            result.put(name, new ByteSliceIterator(input, start + 1, end - start - 1));
+          }
+        } else if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+          parser.skipChildren();
+          int end = (int) parser.currentLocation().getByteOffset();
+          result.put(name, new ByteSliceIterator(input, start, end - start));
+        } else if (token != JsonToken.VALUE_NULL) {
+          result.put(name, new StringByteIterator(parser.getText()));
+        }
+      }
+    }
+    return result;
+  }
+
+  private static int stringEnd(byte[] input, int position) {
+    for (int i = position; i < input.length; i++) {
+      if (input[i] == '"') {
+        return i;
+      } else if (input[i] == '\\') {
+        return -1;
+      }
+    }
+    return -1;
+  }
+}
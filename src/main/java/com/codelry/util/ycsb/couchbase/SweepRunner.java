@@ -0,0 +1,239 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.Benchmark;
+import com.codelry.util.ycsb.DB;
+import com.codelry.util.ycsb.DBException;
+import com.codelry.util.ycsb.Status;
+import com.codelry.util.ycsb.Workload;
+import org.apache.commons.cli.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the throughput a cluster sustains within a p99 latency objective by running a workload at a series of load
+ * levels against one connection.
+ * For each KV endpoint count the runner connects once, creates and initializes clients for the highest concurrency,
+ * and then runs a step of fixed duration for each combination of concurrency and target rate, in increasing order.
+ * A step is within the objective when its p99 is at or below the latency objective and the fraction of operations
+ * that failed, taken from the status the binding returned, is at or below the error objective. Once a step is not,
+ * the higher rates at that concurrency are skipped. Each step reports its throughput, error count and latency
+ * percentiles, measured from the scheduled start of each operation when the rate is limited, and the report is
+ * written as CSV with the step with the highest throughput within the objective marked as the knee.
+ */
+public class SweepRunner {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SweepRunner.class);
+  private static final String HEADER =
+      "endpoints,concurrency,targetRate,seconds,operations,errors,throughput,p50Us,p90Us,p99Us,p999Us,withinSlo,knee";
+
+  /**
+   * The outcome of one load level.
+   */
+  record Step(int endpoints, int concurrency, double targetRate, double seconds, long operations, long errors,
+              long[] quantiles, boolean withinSlo) {
+    double throughput() {
+      return operations / Math.max(seconds, 0.001);
+    }
+
+    long p99() {
+      return quantiles.length > 2 ? quantiles[2] : 0;
+    }
+  }
+
+  public static void main(String[] args) {
+    Options options = WorkloadDriver.options();
+    options.addOption(new Option("c", "concurrency", true, "comma separated client counts (default threadcount)"));
+    options.addOption(new Option("e", "endpoints", true, "comma separated KV endpoint counts (default kvEndpoints)"));
+    options.addOption(new Option("r", "rates", true, "comma separated target ops/sec, 0 for unlimited (default 0)"));
+    options.addOption(new Option("d", "duration", true, "seconds per step (default 30)"));
+    options.addOption(new Option("s", "slo", true, "p99 latency objective in microseconds (default 10000)"));
+    options.addOption(new Option("x", "errors", true, "highest fraction of failed operations (default 0.001)"));
+    options.addOption(new Option("o", "output", true, "report file (default sweep.csv)"));
+    CommandLine cmd = WorkloadDriver.parse("SweepRunner", options, args);
+
+    try {
+      Properties properties = WorkloadDriver.properties(cmd);
+      properties.setProperty(Benchmark.DO_TRANSACTIONS_PROPERTY, "true");
+      int[] concurrency = levels(cmd.getOptionValue("concurrency", properties.getProperty("threadcount", "1")));
+      int[] endpoints = levels(cmd.getOptionValue("endpoints", properties.getProperty("couchbase.kvEndpoints", "8")));
+      double[] rates = rates(cmd.getOptionValue("rates", "0"));
+      long stepNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(cmd.getOptionValue("duration", "30")));
+      long sloMicros = Long.parseLong(cmd.getOptionValue("slo", "10000"));
+      double maxErrors = Double.parseDouble(cmd.getOptionValue("errors", "0.001"));
+      String output = cmd.getOptionValue("output", "sweep.csv");
+      if (endpoints.length > 1) {
+        properties.setProperty(CouchbaseClientBinding.COUCHBASE_DEDICATED_ENVIRONMENT, "true");
+      }
+
+      Workload workload = WorkloadDriver.workload(properties);
+      List<Step> steps = new ArrayList<>();
+      for (int endpointCount : endpoints) {
+        properties.setProperty("couchbase.kvEndpoints", String.valueOf(endpointCount));
+        steps.addAll(sweep(properties, workload, endpointCount, concurrency, rates, stepNanos, sloMicros, maxErrors));
+      }
+      workload.cleanup();
+      report(steps, output);
+      System.exit(0);
+    } catch (Exception e) {
+      System.err.println("Error: " + e);
+      e.printStackTrace(System.err);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Run every concurrency and rate step with one connection using the given number of KV endpoints.
+   */
+  private static List<Step> sweep(Properties properties, Workload workload, int endpoints, int[] concurrency,
+                                  double[] rates, long stepNanos, long sloMicros, double maxErrors)
+      throws Exception {
+    int maxClients = 0;
+    for (int level : concurrency) {
+      maxClients = Math.max(maxClients, level);
+    }
+    List<MeasuredDB> clients = new ArrayList<>(maxClients);
+    List<Object> states = new ArrayList<>(maxClients);
+    List<Step> steps = new ArrayList<>();
+    try {
+      for (int id = 0; id < maxClients; id++) {
+        MeasuredDB db = (MeasuredDB) WorkloadDriver.database(properties);
+        db.init();
+        clients.add(db);
+        states.add(workload.initThread(properties, id, maxClients));
+      }
+      for (int level : concurrency) {
+        for (double rate : rates) {
+          LOGGER.info("Step: {} endpoints, {} clients, {} ops/sec", endpoints, level, rate > 0 ? rate : "unlimited");
+          Step step = step(workload, clients, states, endpoints, level, rate, stepNanos, sloMicros, maxErrors);
+          steps.add(step);
+          LOGGER.info("Step: {} ops/sec, p99 {} us, {} errors", String.format("%.1f", step.throughput()), step.p99(),
+              step.errors());
+          if (!step.withinSlo()) {
+            break;
+          }
+        }
+      }
+    } finally {
+      for (DB db : clients) {
+        try {
+          db.cleanup();
+        } catch (DBException e) {
+          LOGGER.error("Cleanup failed: {}", e.getMessage(), e);
+        }
+      }
+    }
+    return steps;
+  }
+
+  /**
+   * Run the first clients for the step duration, each sending its share of the target rate on a fixed schedule.
+   */
+  private static Step step(Workload workload, List<MeasuredDB> clients, List<Object> states, int endpoints,
+                           int concurrency, double rate, long stepNanos, long sloMicros, double maxErrors)
+      throws InterruptedException {
+    LatencyWindow latencies = new LatencyWindow();
+    CountDownLatch finished = new CountDownLatch(concurrency);
+    long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * concurrency / rate) : 0;
+    long start = System.nanoTime();
+    for (int id = 0; id < concurrency; id++) {
+      MeasuredDB db = clients.get(id);
+      Object state = states.get(id);
+      long first = start + (intervalNanos > 0 ? intervalNanos * id / concurrency : 0);
+      Thread client = new Thread(() -> {
+        try {
+          run(workload, db, state, first, intervalNanos, start + stepNanos, latencies);
+        } catch (Throwable t) {
+          LOGGER.error("Client failed: {}", t.getMessage(), t);
+        } finally {
+          finished.countDown();
+        }
+      }, "sweep-" + id);
+      client.start();
+    }
+    finished.await();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    latencies.rotate(0);
+    long[] quantiles = latencies.quantiles();
+    boolean withinSlo = quantiles.length > 2 && quantiles[2] <= sloMicros
+        && latencies.errors() <= maxErrors * latencies.count();
+    return new Step(endpoints, concurrency, rate, seconds, latencies.count(), latencies.errors(), quantiles,
+        withinSlo);
+  }
+
+  private static void run(Workload workload, MeasuredDB db, Object state, long first, long intervalNanos, long end,
+                          LatencyWindow latencies) {
+    long next = first;
+    while (System.nanoTime() - end < 0 && !workload.isStopRequested()) {
+      long start = System.nanoTime();
+      if (intervalNanos > 0) {
+        while (next - start > 0) {
+          LockSupport.parkNanos(next - start);
+          start = System.nanoTime();
+        }
+        // Measure from the scheduled time so a slow response also counts against the operations it delayed.
+        start = next;
+        next += intervalNanos;
+      }
+      // The workload only reports whether it ran an operation, so the outcome is taken from the binding.
+      boolean attempted = workload.doTransaction(db, state);
+      Status status = db.takeStatus();
+      boolean ok = attempted && status != null && status.isOk();
+      latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), ok, Long.MAX_VALUE);
+    }
+  }
+
+  private static void report(List<Step> steps, String output) throws IOException {
+    Step knee = null;
+    for (Step step : steps) {
+      if (step.withinSlo() && (knee == null || step.throughput() > knee.throughput())) {
+        knee = step;
+      }
+    }
+    try (PrintWriter writer = new PrintWriter(new FileWriter(output))) {
+      writer.println(HEADER);
+      for (Step step : steps) {
+        long[] q = step.quantiles().length == LatencyWindow.QUANTILES.length
+            ? step.quantiles() : new long[LatencyWindow.QUANTILES.length];
+        writer.printf("%d,%d,%.0f,%.1f,%d,%d,%.1f,%d,%d,%d,%d,%b,%b%n", step.endpoints(), step.concurrency(),
+            step.targetRate(), step.seconds(), step.operations(), step.errors(), step.throughput(),
+            q[0], q[1], q[2], q[3], step.withinSlo(), step == knee);
+      }
+    }
+    System.out.println("[SWEEP], Steps, " + steps.size());
+    System.out.println("[SWEEP], Report, " + output);
+    if (knee != null) {
+      System.out.printf("[SWEEP], Knee, endpoints=%d concurrency=%d targetRate=%.0f throughput=%.1f p99Us=%d%n",
+          knee.endpoints(), knee.concurrency(), knee.targetRate(), knee.throughput(), knee.p99());
+    } else {
+      System.out.println("[SWEEP], Knee, none within the objective");
+    }
+  }
+
+  static int[] levels(String value) {
+    String[] parts = value.split(",");
+    int[] levels = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      levels[i] = Integer.parseInt(parts[i].trim());
+    }
+    return levels;
+  }
+
+  static double[] rates(String value) {
+    String[] parts = value.split(",");
+    double[] rates = new double[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      rates[i] = Double.parseDouble(parts[i].trim());
+    }
+    return rates;
+  }
+}
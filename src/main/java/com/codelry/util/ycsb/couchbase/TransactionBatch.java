@@ -0,0 +1,170 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.Status;
+import com.couchbase.client.core.msg.kv.DurabilityLevel;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.Collection;
+import com.couchbase.client.java.json.JsonObject;
+import com.couchbase.client.java.transactions.TransactionAttemptContext;
+import com.couchbase.client.java.transactions.TransactionGetResult;
+import com.couchbase.client.java.transactions.config.TransactionOptions;
+import com.couchbase.client.java.transactions.error.TransactionCommitAmbiguousException;
+import com.couchbase.client.java.transactions.error.TransactionExpiredException;
+import com.couchbase.client.java.transactions.error.TransactionFailedException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-thread buffer that groups the operations a client thread receives into distributed ACID transactions.
+ * Reads, updates, inserts and deletes are buffered, and the operation that fills the group runs the transaction.
+ * Every operation returns {@link Status#BATCHED_OK}, since its outcome is that of the whole group, so a failed
+ * transaction is not reported on the one operation that happened to complete the group. Instead, each operation is
+ * counted with an {@code OK} or {@code ERROR} return code in the {@code TXN-OPERATIONS} measurement, and the total
+ * that failed is returned by {@link #flush()}.
+ * Reads become transactional gets whose content is not returned to the workload, updates get the document and replace
+ * it with the changed fields, inserts become transactional inserts and deletes get and remove the document.
+ * Each transaction's latency is recorded in the {@code TXN} measurement with its outcome ({@code COMMITTED},
+ * {@code FAILED}, {@code EXPIRED} or {@code AMBIGUOUS}) as the return code, and the number of attempts of
+ * transactions that were retried in the {@code TXN-ATTEMPTS} measurement.
+ */
+public class TransactionBatch {
+  public static final String COUCHBASE_TRANSACTION_SIZE = "couchbase.transactionSize";
+  public static final String COUCHBASE_TRANSACTION_DURABILITY = "couchbase.transactionDurability";
+  public static final String COUCHBASE_TRANSACTION_TIMEOUT = "couchbase.transactionTimeoutMs";
+  public static final String MEASUREMENT = "TXN";
+  public static final String ATTEMPTS_MEASUREMENT = "TXN-ATTEMPTS";
+  public static final String OPERATIONS_MEASUREMENT = "TXN-OPERATIONS";
+  private static final Status COMMITTED = new Status("COMMITTED", "Transaction committed");
+  private static final Status FAILED = new Status("FAILED", "Transaction rolled back");
+  private static final Status EXPIRED = new Status("EXPIRED", "Transaction ran out of time and rolled back");
+  private static final Status AMBIGUOUS = new Status("AMBIGUOUS", "Transaction commit outcome unknown");
+  private final Cluster cluster;
+  private final TransactionOptions options;
+  private final int size;
+  private final List<Operation> pending;
+  private long failures;
+
+  private enum Type { READ, UPDATE, INSERT, DELETE }
+
+  private record Operation(Type type, Collection collection, String key, JsonObject values) {}
+
+  /**
+   * @param cluster The cluster the thread's collections belong to.
+   * @param size The number of operations in each transaction.
+   * @param durability The durability level of the transaction writes.
+   * @param timeoutMs The time a transaction may take, including its retries.
+   */
+  public TransactionBatch(Cluster cluster, int size, DurabilityLevel durability, long timeoutMs) {
+    this.cluster = cluster;
+    this.size = size;
+    this.options = TransactionOptions.transactionOptions()
+        .durabilityLevel(durability)
+        .timeout(Duration.ofMillis(timeoutMs));
+    this.pending = new ArrayList<>(size);
+  }
+
+  public Status read(Collection collection, String key) {
+    return add(new Operation(Type.READ, collection, key, null));
+  }
+
+  public Status update(Collection collection, String key, Map<String, ByteIterator> values) {
+    return add(new Operation(Type.UPDATE, collection, key, content(values)));
+  }
+
+  public Status insert(Collection collection, String key, Map<String, ByteIterator> values) {
+    return add(new Operation(Type.INSERT, collection, key, content(values)));
+  }
+
+  public Status delete(Collection collection, String key) {
+    return add(new Operation(Type.DELETE, collection, key, null));
+  }
+
+  /**
+   * Run the buffered operations as a final, possibly smaller, transaction.
+   * @return The number of operations of this thread that were in transactions that did not commit.
+   */
+  public long flush() {
+    if (!pending.isEmpty()) {
+      commit();
+    }
+    return failures;
+  }
+
+  private Status add(Operation operation) {
+    pending.add(operation);
+    if (pending.size() >= size) {
+      commit();
+    }
+    return Status.BATCHED_OK;
+  }
+
+  /**
+   * Encode the fields when the operation is buffered, since the values can only be read once.
+   */
+  private static JsonObject content(Map<String, ByteIterator> values) {
+    JsonObject content = JsonObject.create();
+    for (Map.Entry<String, ByteIterator> e : values.entrySet()) {
+      content.put(e.getKey(), e.getValue().toString());
+    }
+    return content;
+  }
+
+  private void commit() {
+    List<Operation> operations = new ArrayList<>(pending);
+    pending.clear();
+    int[] attempts = new int[1];
+    long start = System.nanoTime();
+    Status outcome;
+    try {
+      cluster.transactions().run(ctx -> {
+        attempts[0]++;
+        for (Operation operation : operations) {
+          apply(ctx, operation);
+        }
+      }, options);
+      outcome = COMMITTED;
+    } catch (TransactionExpiredException e) {
+      outcome = EXPIRED;
+    } catch (TransactionCommitAmbiguousException e) {
+      outcome = AMBIGUOUS;
+    } catch (TransactionFailedException e) {
+      ErrorCounters.record(MEASUREMENT, e.getCause() != null ? e.getCause() : e);
+      outcome = FAILED;
+    } catch (Throwable t) {
+      ErrorCounters.record(MEASUREMENT, t);
+      outcome = FAILED;
+    }
+    OperationMetrics.measure(MEASUREMENT, start);
+    OperationMetrics.status(MEASUREMENT, outcome);
+    if (attempts[0] > 1) {
+      OperationMetrics.measureMicros(ATTEMPTS_MEASUREMENT, attempts[0]);
+    }
+    Status status = outcome == COMMITTED ? Status.OK : Status.ERROR;
+    for (int i = 0; i < operations.size(); i++) {
+      OperationMetrics.status(OPERATIONS_MEASUREMENT, status);
+    }
+    if (outcome != COMMITTED) {
+      failures += operations.size();
+    }
+  }
+
+  private static void apply(TransactionAttemptContext ctx, Operation operation) {
+    switch (operation.type()) {
+      case READ -> ctx.get(operation.collection(), operation.key());
+      case UPDATE -> {
+        TransactionGetResult current = ctx.get(operation.collection(), operation.key());
+        JsonObject content = current.contentAsObject();
+        for (String name : operation.values().getNames()) {
+          content.put(name, operation.values().get(name));
+        }
+        ctx.replace(current, content);
+      }
+      case INSERT -> ctx.insert(operation.collection(), operation.key(), operation.values());
+      case DELETE -> ctx.remove(ctx.get(operation.collection(), operation.key()));
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.codelry.util.ycsb.couchbase;
+
+/**
+ * How the binding writes the fields of an update.
+ */
+public enum UpdateMode {
+  SUBDOC,
+  REPLACE,
+  ADAPTIVE;
+
+  /**
+   * Parse a property value such as {@code subdoc} or {@code adaptive}.
+   */
+  public static UpdateMode fromProperty(String value) {
+    return valueOf(value.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase());
+  }
+}
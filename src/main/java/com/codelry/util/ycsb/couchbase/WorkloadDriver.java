@@ -0,0 +1,133 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.DB;
+import com.codelry.util.ycsb.Workload;
+import com.codelry.util.ycsb.measurements.Measurements;
+import com.codelry.util.ycsb.measurements.exporter.MeasurementsExporter;
+import com.codelry.util.ycsb.measurements.exporter.TextMeasurementsExporter;
+import org.apache.commons.cli.*;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Shared setup for the drivers in this project that run a YCSB workload against the binding without the YCSB client:
+ * command line parsing, property loading, workload and binding creation, and the final measurement report.
+ */
+public final class WorkloadDriver {
+  public static final String DEFAULT_WORKLOAD = "com.codelry.util.ycsb.workloads.CoreWorkload";
+  public static final String DEFAULT_DB = "com.codelry.util.ycsb.couchbase.CouchbaseClientBinding";
+
+  /**
+   * The command line options common to all drivers.
+   */
+  public static Options options() {
+    Options options = new Options();
+    options.addOption(new Option("w", "workload", true, "workload resource name, for example workloada"));
+    options.addOption(new Option("P", "properties", true, "property file, may be repeated"));
+    options.addOption(new Option("p", "property", true, "property as name=value, may be repeated"));
+    options.addOption(new Option("l", "load", false, "run the load phase instead of the transaction phase"));
+    return options;
+  }
+
+  /**
+   * Parse the command line, printing the usage and exiting if it is not valid.
+   */
+  public static CommandLine parse(String name, Options options, String[] args) {
+    try {
+      return new DefaultParser().parse(options, args);
+    } catch (ParseException e) {
+      System.out.println(e.getMessage());
+      new HelpFormatter().printHelp(name, options);
+      System.exit(1);
+      return null;
+    }
+  }
+
+  /**
+   * Load the properties in the same order as the benchmark runner: the {@code ycsb.properties} and
+   * {@code db.properties} files on the class path, the workload, property files, and then individual properties.
+   */
+  public static Properties properties(CommandLine cmd) throws IOException {
+    Properties properties = new Properties();
+    loadResource(properties, "ycsb.properties");
+    loadResource(properties, "db.properties");
+    if (cmd.hasOption("workload")) {
+      String workload = cmd.getOptionValue("workload");
+      if (!loadResource(properties, "workloads/" + workload) && !loadResource(properties, workload)) {
+        throw new IOException("Workload " + workload + " not found");
+      }
+    }
+    for (String file : cmd.getOptionValues("properties") != null ? cmd.getOptionValues("properties") : new String[0]) {
+      try (InputStream input = new FileInputStream(file)) {
+        properties.load(input);
+      }
+    }
+    for (String property : cmd.getOptionValues("property") != null ? cmd.getOptionValues("property") : new String[0]) {
+      int split = property.indexOf('=');
+      if (split < 1) {
+        throw new IOException("Property " + property + " is not name=value");
+      }
+      properties.setProperty(property.substring(0, split), property.substring(split + 1));
+    }
+    return properties;
+  }
+
+  private static boolean loadResource(Properties properties, String name) throws IOException {
+    try (InputStream input = WorkloadDriver.class.getClassLoader().getResourceAsStream(name)) {
+      if (input == null) {
+        return false;
+      }
+      properties.load(input);
+      return true;
+    }
+  }
+
+  /**
+   * Create and initialize the workload named by the {@code workload} property.
+   */
+  public static Workload workload(Properties properties) throws Exception {
+    Measurements.setProperties(properties);
+    String className = properties.getProperty("workload", DEFAULT_WORKLOAD);
+    Workload workload = (Workload) Class.forName(className).getDeclaredConstructor().newInstance();
+    workload.init(properties);
+    return workload;
+  }
+
+  /**
+   * Create the binding named by the {@code db} property, wrapped to record the standard operation measurements.
+   */
+  public static DB database(Properties properties) throws Exception {
+    String className = properties.getProperty("db", DEFAULT_DB);
+    DB db = new MeasuredDB((DB) Class.forName(className).getDeclaredConstructor().newInstance());
+    db.setProperties(properties);
+    return db;
+  }
+
+  /**
+   * The number of operations a run performs: the insert count in the load phase, otherwise the operation count.
+   */
+  public static long operationCount(Properties properties, boolean load) {
+    if (load) {
+      return Long.parseLong(properties.getProperty("insertcount", properties.getProperty("recordcount", "0")));
+    }
+    return Long.parseLong(properties.getProperty("operationcount", "0"));
+  }
+
+  /**
+   * Print the run summary and all measurements in the YCSB text format.
+   */
+  public static void report(long runtimeMs, long operations) throws IOException {
+    try (MeasurementsExporter exporter = new TextMeasurementsExporter(System.out)) {
+      exporter.write("OVERALL", "RunTime(ms)", runtimeMs);
+      exporter.write("OVERALL", "Throughput(ops/sec)", operations * 1000.0 / Math.max(1, runtimeMs));
+      Measurements.getMeasurements().exportMeasurements(exporter);
+    }
+  }
+
+  private WorkloadDriver() {
+    super();
+  }
+}
@@ -0,0 +1,34 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.StringByteIterator;
+import com.couchbase.client.core.msg.kv.CodecFlags;
+import com.couchbase.client.java.codec.Transcoder;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifies the binary document format written by {@link BinaryMapTranscoder}.
+ */
+class TestBinaryMapTranscoder {
+
+  @Test
+  void roundTrip() {
+    Map<String, ByteIterator> values = new HashMap<>();
+    values.put("field0", new StringByteIterator("value zero"));
+    values.put("field1", new StringByteIterator(""));
+
+    Transcoder.EncodedValue encoded = BinaryMapTranscoder.INSTANCE.encode(values);
+    @SuppressWarnings("unchecked")
+    Map<String, ByteIterator> decoded = BinaryMapTranscoder.INSTANCE.decode(Map.class, encoded.encoded(), encoded.flags());
+
+    assertEquals(CodecFlags.BINARY_COMPAT_FLAGS, encoded.flags());
+    assertEquals(2 * (6 + "field0".length()) + "value zero".length(), encoded.encoded().length);
+    assertEquals("value zero", decoded.get("field0").toString());
+    assertEquals("", decoded.get("field1").toString());
+  }
+}
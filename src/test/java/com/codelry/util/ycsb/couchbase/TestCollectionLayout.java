@@ -0,0 +1,79 @@
+package com.codelry.util.ycsb.couchbase;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies the collection names and the key to collection mapping of {@link CollectionLayout}.
+ */
+class TestCollectionLayout {
+
+  private static CollectionLayout layout(int scopes, int collections) {
+    Properties properties = new Properties();
+    properties.setProperty(CouchbaseClientBinding.COUCHBASE_BUCKET, "ycsb");
+    properties.setProperty(CouchbaseClientBinding.COUCHBASE_SCOPE, "bench");
+    properties.setProperty(CouchbaseClientBinding.COUCHBASE_COLLECTION, "usertable");
+    properties.setProperty(CollectionLayout.COUCHBASE_SCOPES, String.valueOf(scopes));
+    properties.setProperty(CollectionLayout.COUCHBASE_COLLECTIONS, String.valueOf(collections));
+    return CollectionLayout.fromProperties(properties);
+  }
+
+  @Test
+  void singleCollection() {
+    CollectionLayout layout = layout(1, 1);
+    assertEquals(1, layout.size());
+    assertEquals("ycsb.bench.usertable", layout.keyspace(0));
+    assertEquals(0, layout.index("user123"));
+  }
+
+  @Test
+  void names() {
+    CollectionLayout single = layout(1, 3);
+    assertEquals("ycsb.bench.collection2", single.keyspace(2));
+    CollectionLayout many = layout(4, 5);
+    assertEquals(20, many.size());
+    assertEquals("scope0", many.scope(0));
+    assertEquals("collection0", many.collection(0));
+    assertEquals("scope3", many.scope(19));
+    assertEquals("collection4", many.collection(19));
+  }
+
+  @Test
+  void stableSpread() {
+    CollectionLayout layout = layout(4, 5);
+    int[] counts = new int[layout.size()];
+    for (int i = 0; i < 20000; i++) {
+      String key = "user" + i;
+      int index = layout.index(key);
+      assertEquals(index, layout(4, 5).index(key));
+      counts[index]++;
+    }
+    for (int count : counts) {
+      assertTrue(count > 500 && count < 1500, "collection count " + count);
+    }
+  }
+
+  @Test
+  void independentOfShard() {
+    for (int size : new int[]{2, 4, 8}) {
+      CollectionLayout layout = layout(1, size);
+      int[][] counts = new int[size][size];
+      for (int i = 0; i < 64000; i++) {
+        String key = "user" + i;
+        counts[Math.floorMod(key.hashCode(), size)][layout.index(key)]++;
+      }
+      int expected = 64000 / (size * size);
+      for (int shard = 0; shard < size; shard++) {
+        for (int collection = 0; collection < size; collection++) {
+          int count = counts[shard][collection];
+          assertTrue(count > expected / 2 && count < expected * 3 / 2,
+              size + " shards, shard " + shard + " collection " + collection + " count " + count);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.codelry.util.ycsb.couchbase;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies the latency histogram buckets used by {@link HedgeDelay} and the read mode property values.
+ */
+class TestHedgeDelay {
+
+  @Test
+  void bucketBounds() {
+    for (long micros : new long[]{0, 1, 63, 64, 65, 127, 128, 1000, 4095, 4096, 123456789L, Long.MAX_VALUE / 2}) {
+      long upper = HedgeDelay.upperBound(HedgeDelay.bucket(micros));
+      assertTrue(upper > micros, "upper bound " + upper + " for " + micros);
+      assertTrue(upper - micros <= Math.max(1, micros / 16), "precision for " + micros);
+    }
+  }
+
+  @Test
+  void fixedDelay() {
+    HedgeDelay delay = new HedgeDelay(250, 0);
+    delay.record(10_000_000);
+    assertEquals(250_000, delay.delayNanos());
+  }
+
+  @Test
+  void readModeProperty() {
+    assertEquals(ReadMode.ANY_REPLICA, ReadMode.fromProperty("anyReplica"));
+    assertEquals(ReadMode.ALL_REPLICAS, ReadMode.fromProperty("all_replicas"));
+    assertEquals(ReadMode.HEDGED, ReadMode.fromProperty("hedged"));
+  }
+}
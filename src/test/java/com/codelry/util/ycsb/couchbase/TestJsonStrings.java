@@ -0,0 +1,37 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.StringByteIterator;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifies the JSON string encoding of sub-document update values and the update mode property values.
+ */
+class TestJsonStrings {
+
+  private static String encode(String value) {
+    return new String(JsonStrings.encode(new StringByteIterator(value)), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void plainValue() {
+    assertEquals("\"abc DEF 123\"", encode("abc DEF 123"));
+    assertEquals("\"\"", encode(""));
+  }
+
+  @Test
+  void escapedValue() {
+    assertEquals("\"a\\\"b\\\\c\"", encode("a\"b\\c"));
+    assertEquals("\"x\\u000ay\\u001f\"", encode("x\ny\u001f"));
+  }
+
+  @Test
+  void updateModeProperty() {
+    assertEquals(UpdateMode.SUBDOC, UpdateMode.fromProperty("subdoc"));
+    assertEquals(UpdateMode.ADAPTIVE, UpdateMode.fromProperty("adaptive"));
+    assertEquals(UpdateMode.REPLACE, UpdateMode.fromProperty("REPLACE"));
+  }
+}
@@ -0,0 +1,54 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.couchbase.client.core.cnc.ValueRecorder;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies the {@link LatencyWindow} percentiles, SDK meter series and name formatting of {@link MetricsServer}.
+ */
+class TestMetricsServer {
+
+  @Test
+  void windowPercentiles() {
+    LatencyWindow stats = new LatencyWindow();
+    for (int i = 1; i <= 1000; i++) {
+      stats.record(i, true, Long.MAX_VALUE);
+    }
+    stats.rotate(0);
+    LatencyWindow empty = new LatencyWindow();
+    empty.rotate(0);
+    assertEquals(0, empty.quantiles().length);
+    long[] quantiles = stats.quantiles();
+    assertEquals(4, quantiles.length);
+    assertTrue(quantiles[0] >= 500 && quantiles[0] <= 520, "p50 " + quantiles[0]);
+    assertTrue(quantiles[2] >= 990 && quantiles[2] <= 1024, "p99 " + quantiles[2]);
+  }
+
+  @Test
+  void meterSeries() {
+    SdkMeter meter = new SdkMeter();
+    Map<String, String> tags = new HashMap<>();
+    tags.put("db.operation", "get");
+    ValueRecorder first = meter.valueRecorder("db.couchbase.operations", tags);
+    ValueRecorder second = meter.valueRecorder("db.couchbase.operations", new HashMap<>(tags));
+    assertSame(first, second);
+    first.recordValue(100);
+    second.recordValue(300);
+    SdkMeter.Series series = meter.recorders().get(0);
+    assertEquals(2, series.count());
+    assertEquals(400, series.total());
+  }
+
+  @Test
+  void names() {
+    assertEquals("db_couchbase_operations", MetricsServer.sanitize("db.couchbase.operations"));
+    assertEquals("a\\\"b\\\\c", MetricsServer.escape("a\"b\\c"));
+  }
+}
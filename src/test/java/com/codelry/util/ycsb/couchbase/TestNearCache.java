@@ -0,0 +1,92 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.StringByteIterator;
+import com.codelry.util.ycsb.measurements.Measurements;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies eviction, expiry, invalidation, and stale load handling in {@link NearCache}.
+ */
+class TestNearCache {
+
+  @BeforeAll
+  static void measurements() {
+    Measurements.setProperties(new Properties());
+  }
+
+  private static Map<String, ByteIterator> document(String value) {
+    Map<String, ByteIterator> document = new HashMap<>();
+    document.put("field0", new StringByteIterator(value));
+    document.put("field1", new StringByteIterator(value + "1"));
+    return document;
+  }
+
+  @Test
+  void hitReturnsIndependentCopies() {
+    NearCache cache = new NearCache(16, 60000, 1);
+    Map<String, ByteIterator> result = new HashMap<>();
+    DocumentSnapshot snapshot = DocumentSnapshot.of(document("a"));
+    cache.put("user1", snapshot, cache.version("user1"));
+    snapshot.copyTo(Set.of("field0"), result);
+    assertEquals(Set.of("field0"), result.keySet());
+    assertEquals("a", result.get("field0").toString());
+
+    for (int i = 0; i < 2; i++) {
+      Map<String, ByteIterator> cached = new HashMap<>();
+      assertTrue(cache.get("user1", null, cached));
+      assertEquals("a", cached.get("field0").toString());
+      assertEquals("a1", cached.get("field1").toString());
+    }
+  }
+
+  @Test
+  void evictsLeastRecentlyUsed() {
+    NearCache cache = new NearCache(2, 60000, 1);
+    cache.put("user1", DocumentSnapshot.of(document("a")), cache.version("user1"));
+    cache.put("user2", DocumentSnapshot.of(document("b")), cache.version("user2"));
+    assertTrue(cache.get("user1", null, new HashMap<>()));
+    cache.put("user3", DocumentSnapshot.of(document("c")), cache.version("user3"));
+
+    assertTrue(cache.get("user1", null, new HashMap<>()));
+    assertFalse(cache.get("user2", null, new HashMap<>()));
+    assertTrue(cache.get("user3", null, new HashMap<>()));
+  }
+
+  @Test
+  void expiresAndInvalidates() throws InterruptedException {
+    NearCache cache = new NearCache(16, 20, 4);
+    cache.put("user1", DocumentSnapshot.of(document("a")), cache.version("user1"));
+    cache.put("user2", DocumentSnapshot.of(document("b")), cache.version("user2"));
+    assertTrue(cache.memoryBytes() > 0);
+    cache.invalidate("user1");
+    assertFalse(cache.get("user1", null, new HashMap<>()));
+    Thread.sleep(50);
+    assertFalse(cache.get("user2", null, new HashMap<>()));
+    assertEquals(0, cache.memoryBytes());
+  }
+
+  @Test
+  void skipsLoadStartedBeforeInvalidation() {
+    NearCache cache = new NearCache(16, 60000, 1);
+    long version = cache.version("user1");
+    cache.invalidate("user1");
+    cache.put("user1", DocumentSnapshot.of(document("old")), version);
+    assertFalse(cache.get("user1", null, new HashMap<>()));
+
+    cache.put("user1", DocumentSnapshot.of(document("new")), cache.version("user1"));
+    Map<String, ByteIterator> cached = new HashMap<>();
+    assertTrue(cache.get("user1", null, cached));
+    assertEquals("new", cached.get("field0").toString());
+  }
+}
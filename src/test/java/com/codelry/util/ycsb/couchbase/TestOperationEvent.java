@@ -0,0 +1,72 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.Status;
+import com.codelry.util.ycsb.StringByteIterator;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifies the fields of {@link OperationEvent} and that only operations above the threshold are committed.
+ */
+class TestOperationEvent {
+
+  @AfterEach
+  void reset() {
+    OperationEvent.configure(0);
+  }
+
+  private static List<RecordedEvent> record(Runnable operations) throws Exception {
+    Path file = Files.createTempFile("operations", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(OperationEvent.class);
+      recording.start();
+      operations.run();
+      recording.stop();
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  void eventFields() throws Exception {
+    Map<String, ByteIterator> values = new HashMap<>();
+    values.put("field0", new StringByteIterator("0123456789"));
+    List<RecordedEvent> events = record(() -> {
+      OperationEvent event = OperationEvent.begin(values);
+      OperationEvent.commit(event, "UPDATE", "user1", Status.OK, System.nanoTime(), null);
+    });
+    assertEquals(1, events.size());
+    RecordedEvent event = events.get(0);
+    assertEquals("UPDATE", event.getString("operation"));
+    assertEquals("user1".hashCode(), event.getInt("keyHash"));
+    assertEquals("OK", event.getString("status"));
+    assertEquals(16, event.getLong("documentSize"));
+  }
+
+  @Test
+  void threshold() throws Exception {
+    OperationEvent.configure(60_000_000);
+    List<RecordedEvent> events = record(() -> {
+      OperationEvent fast = OperationEvent.begin(null);
+      OperationEvent.commit(fast, "READ", "user1", Status.OK, System.nanoTime(), null);
+      OperationEvent slow = OperationEvent.begin(null);
+      OperationEvent.commit(slow, "READ", "user2", Status.OK, System.nanoTime() - 120_000_000_000L, null);
+    });
+    assertEquals(1, events.size());
+    assertEquals("user2".hashCode(), events.get(0).getInt("keyHash"));
+  }
+}
@@ -0,0 +1,27 @@
+package com.codelry.util.ycsb.couchbase;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifies the last key of the bounded KV range scan.
+ */
+class TestRangeEnd {
+
+  @Test
+  void advancesThePaddedKeyNumber() {
+    assertEquals("user000109", CouchbaseClientBinding.rangeEnd("user000010", 100, 6));
+    assertEquals("user000010", CouchbaseClientBinding.rangeEnd("user000010", 1, 6));
+  }
+
+  @Test
+  void keepsThePaddingAcrossDigitBoundaries() {
+    assertEquals("user001008", CouchbaseClientBinding.rangeEnd("user000999", 10, 6));
+  }
+
+  @Test
+  void stopsAtTheLastKey() {
+    assertEquals("user999", CouchbaseClientBinding.rangeEnd("user990", 100, 3));
+  }
+}
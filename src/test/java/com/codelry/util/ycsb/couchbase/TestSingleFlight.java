@@ -0,0 +1,76 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.Status;
+import com.codelry.util.ycsb.StringByteIterator;
+import com.codelry.util.ycsb.measurements.Measurements;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies that {@link SingleFlight} shares one load between concurrent readers of a key.
+ */
+class TestSingleFlight {
+
+  @BeforeAll
+  static void measurements() {
+    Measurements.setProperties(new Properties());
+  }
+
+  @Test
+  void concurrentReadersShareOneLoad() throws Exception {
+    SingleFlight flights = new SingleFlight(0);
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    SingleFlight.Loader loader = (key, document) -> {
+      loads.incrementAndGet();
+      started.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      document.put("field0", new StringByteIterator("value"));
+      return Status.OK;
+    };
+
+    CompletableFuture<SingleFlight.Result> leader = CompletableFuture.supplyAsync(() -> flights.load("user1", loader));
+    started.await(10, TimeUnit.SECONDS);
+    CompletableFuture<SingleFlight.Result> follower =
+        CompletableFuture.supplyAsync(() -> flights.load("user1", loader));
+    Thread.sleep(200);
+    release.countDown();
+
+    for (SingleFlight.Result result : List.of(leader.get(), follower.get())) {
+      Map<String, ByteIterator> record = new HashMap<>();
+      result.document().copyTo(null, record);
+      assertEquals("value", record.get("field0").toString());
+    }
+    assertEquals(1, loads.get());
+    assertTrue(leader.get().leader());
+    assertFalse(follower.get().leader());
+  }
+
+  @Test
+  void notFoundIsShared() {
+    SingleFlight flights = new SingleFlight(0);
+    SingleFlight.Result result = flights.load("user2", (key, document) -> Status.NOT_FOUND);
+    assertEquals(Status.NOT_FOUND, result.status());
+    assertNull(result.document());
+  }
+}
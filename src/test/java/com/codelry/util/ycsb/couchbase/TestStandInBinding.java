@@ -0,0 +1,88 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.DBException;
+import com.codelry.util.ycsb.Status;
+import com.codelry.util.ycsb.StringByteIterator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the binding's read, insert, update and delete against the in-process {@link StandInServer}, through both the
+ * shared connection and a connection with its own SDK environment, with the warm-up enabled.
+ * The stand-in listens on the default ports of a second loopback address, so the client needs no port settings.
+ */
+class TestStandInBinding {
+
+  private static final String HOSTNAME = "127.0.0.2";
+  private static StandInServer server;
+
+  @BeforeAll
+  static void start() {
+    try {
+      server = new StandInServer(HOSTNAME, 11210, 8091, "password", 0).start();
+    } catch (IOException e) {
+      server = null;
+    }
+  }
+
+  @AfterAll
+  static void stop() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  void sharedConnection() throws DBException {
+    runOperations(new Properties());
+  }
+
+  @Test
+  void dedicatedEnvironment() throws DBException {
+    Properties properties = new Properties();
+    properties.setProperty(CouchbaseClientBinding.COUCHBASE_DEDICATED_ENVIRONMENT, "true");
+    runOperations(properties);
+  }
+
+  private static void runOperations(Properties properties) throws DBException {
+    assumeTrue(server != null, "the stand-in could not listen on " + HOSTNAME);
+    properties.setProperty("couchbase.hostname", HOSTNAME);
+    properties.setProperty("couchbase.sslMode", "false");
+    properties.setProperty(CouchbaseClientBinding.COUCHBASE_BUCKET, "bench");
+    properties.setProperty(CouchbaseClientBinding.COUCHBASE_SCOPE, "bench");
+    properties.setProperty(CouchbaseClientBinding.COUCHBASE_COLLECTION, "usertable");
+    CouchbaseClientBinding binding = new CouchbaseClientBinding();
+    binding.setProperties(properties);
+    binding.init();
+    try {
+      Map<String, ByteIterator> values = new HashMap<>();
+      values.put("field0", new StringByteIterator("zero"));
+      values.put("field1", new StringByteIterator("one"));
+      assertEquals(Status.OK, binding.insert("usertable", "user1", values));
+
+      Map<String, ByteIterator> update = new HashMap<>();
+      update.put("field1", new StringByteIterator("updated"));
+      assertEquals(Status.OK, binding.update("usertable", "user1", update));
+
+      Map<String, ByteIterator> result = new HashMap<>();
+      assertEquals(Status.OK, binding.read("usertable", "user1", null, result));
+      assertEquals("zero", result.get("field0").toString());
+      assertEquals("updated", result.get("field1").toString());
+
+      assertEquals(Status.OK, binding.delete("usertable", "user1"));
+      assertEquals(Status.NOT_FOUND, binding.read("usertable", "user1", null, new HashMap<>()));
+    } finally {
+      binding.cleanup();
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.StringByteIterator;
+import com.couchbase.client.core.error.DocumentNotFoundException;
+import com.couchbase.client.core.error.DurabilityImpossibleException;
+import com.couchbase.client.core.msg.kv.DurabilityLevel;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.Collection;
+import com.couchbase.client.java.kv.GetOptions;
+import com.couchbase.client.java.kv.LookupInResult;
+import com.couchbase.client.java.kv.LookupInSpec;
+import com.couchbase.client.java.kv.MutateInSpec;
+import com.couchbase.client.java.kv.UpsertOptions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs key/value and sub-document operations against the in-process {@link StandInServer}.
+ */
+class TestStandInServer {
+
+  private static StandInServer server;
+  private static Cluster cluster;
+  private static Collection collection;
+
+  @BeforeAll
+  static void start() throws IOException {
+    int kvPort = freePort();
+    server = new StandInServer("127.0.0.1", kvPort, freePort(), "password", 0).start();
+    Properties properties = new Properties();
+    properties.setProperty("couchbase.hostname", "127.0.0.1:" + kvPort);
+    properties.setProperty("couchbase.sslMode", "false");
+    cluster = ClusterConnector.connect(properties, env -> {});
+    collection = cluster.bucket("bench").scope("bench").collection("usertable");
+  }
+
+  @AfterAll
+  static void stop() throws IOException {
+    cluster.disconnect(Duration.ofSeconds(5));
+    server.close();
+  }
+
+  @Test
+  void keyValueOperations() {
+    Map<String, ByteIterator> values = new HashMap<>();
+    values.put("field0", new StringByteIterator("zero"));
+    values.put("field1", new StringByteIterator("one"));
+    collection.upsert("user1", values, UpsertOptions.upsertOptions().transcoder(StreamingMapTranscoder.INSTANCE));
+
+    collection.mutateIn("user1", List.of(MutateInSpec.upsert("field1", "updated")));
+    LookupInResult lookup = collection.lookupIn("user1", List.of(LookupInSpec.get("field1")));
+    assertEquals("updated", lookup.contentAs(0, String.class));
+
+    @SuppressWarnings("unchecked")
+    Map<String, ByteIterator> document = collection.get("user1",
+        GetOptions.getOptions().transcoder(StreamingMapTranscoder.INSTANCE)).contentAs(Map.class);
+    assertEquals("zero", document.get("field0").toString());
+
+    collection.remove("user1");
+    assertThrows(DocumentNotFoundException.class, () -> collection.get("user1"));
+  }
+
+  @Test
+  void existsUsesDocumentMetadata() {
+    collection.upsert("user2", Map.of("field0", "zero"));
+    assertTrue(collection.exists("user2").exists());
+    collection.remove("user2");
+    assertFalse(collection.exists("user2").exists());
+  }
+
+  @Test
+  void durableWriteIsRejectedWithoutClosingTheConnection() {
+    assertThrows(DurabilityImpossibleException.class, () -> collection.upsert("user3", Map.of("field0", "zero"),
+        UpsertOptions.upsertOptions().durability(DurabilityLevel.MAJORITY)));
+    collection.upsert("user3", Map.of("field0", "zero"));
+    assertEquals("zero", collection.get("user3").contentAsObject().getString("field0"));
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
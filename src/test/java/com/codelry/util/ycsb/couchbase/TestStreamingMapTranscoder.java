@@ -0,0 +1,49 @@
+package com.codelry.util.ycsb.couchbase;
+
+import com.codelry.util.ycsb.ByteIterator;
+import com.codelry.util.ycsb.StringByteIterator;
+import com.couchbase.client.java.codec.Transcoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Verifies that {@link StreamingMapTranscoder} produces the same documents as {@link MapTranscoder}.
+ */
+class TestStreamingMapTranscoder {
+
+  @Test
+  void roundTripMatchesMapTranscoder() {
+    Map<String, ByteIterator> values = new HashMap<>();
+    values.put("field0", new StringByteIterator("plain value"));
+    values.put("field1", new StringByteIterator("quoted \"value\" with \\ escapes"));
+
+    Transcoder.EncodedValue encoded = StreamingMapTranscoder.INSTANCE.encode(values);
+    @SuppressWarnings("unchecked")
+    Map<String, ByteIterator> reference = MapTranscoder.INSTANCE.decode(Map.class, encoded.encoded(), encoded.flags());
+    @SuppressWarnings("unchecked")
+    Map<String, ByteIterator> decoded = StreamingMapTranscoder.INSTANCE.decode(Map.class, encoded.encoded(), encoded.flags());
+
+    assertEquals(reference.get("field0").toString(), decoded.get("field0").toString());
+    assertEquals(reference.get("field1").toString(), decoded.get("field1").toString());
+    assertInstanceOf(ByteSliceIterator.class, decoded.get("field0"));
+  }
+
+  @Test
+  void decodesSlicesOfTheInput() {
+    byte[] document = "{\"field0\":\"abc\",\"field1\":\"d\\u00e9f\",\"field2\":12}".getBytes(StandardCharsets.UTF_8);
+
+    @SuppressWarnings("unchecked")
+    Map<String, ByteIterator> decoded = StreamingMapTranscoder.INSTANCE.decode(Map.class, document, 0);
+
+    assertEquals("abc", decoded.get("field0").toString());
+    assertEquals("déf", decoded.get("field1").toString());
+    assertEquals("12", decoded.get("field2").toString());
+    assertEquals(3, decoded.get("field0").bytesLeft());
+  }
+}